@@ -0,0 +1,68 @@
+package nl.doonline.ZSCompetitions;
+
+import net.runelite.api.coords.WorldPoint;
+
+import java.awt.Polygon;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The tiles an actor occupies: its south-west world tile and its size in tiles, so an NPC of size
+ * 3 covers {@code (x..x+2, y..y+2)}. The canvas polygon around the whole area is kept alongside,
+ * as one list of vertices.
+ */
+public final class ActorFootprint {
+
+    private final int x;
+    private final int y;
+    private final int plane;
+    private final int size;
+    private final int[] canvasXPoints;
+    private final int[] canvasYPoints;
+
+    public ActorFootprint(WorldPoint southWest, int size, Polygon canvasPolygon) {
+        this.x = southWest.getX();
+        this.y = southWest.getY();
+        this.plane = southWest.getPlane();
+        this.size = Math.max(1, size);
+        if (canvasPolygon != null) {
+            this.canvasXPoints = Arrays.copyOf(canvasPolygon.xpoints, canvasPolygon.npoints);
+            this.canvasYPoints = Arrays.copyOf(canvasPolygon.ypoints, canvasPolygon.npoints);
+        } else {
+            this.canvasXPoints = new int[0];
+            this.canvasYPoints = new int[0];
+        }
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getPlane() {
+        return plane;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> footprint = new ConcurrentHashMap<>();
+        footprint.put("southWest", Map.of("x", x, "y", y, "plane", plane));
+        footprint.put("size", size);
+
+        List<List<Integer>> vertices = new ArrayList<>(canvasXPoints.length);
+        for (int i = 0; i < canvasXPoints.length; i++) {
+            vertices.add(List.of(canvasXPoints[i], canvasYPoints[i]));
+        }
+        footprint.put("canvasPolygon", vertices);
+        return footprint;
+    }
+}
@@ -0,0 +1,228 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.ChatMessageType;
+import net.runelite.client.util.Text;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Filters chat on ingest and turns the lines the competition cares about into typed events, so the
+ * webhook gets the fields already extracted instead of raw chat to regex-match itself.
+ * <p>
+ * Built-in rules cover kill counts, valuable drops, pets and collection log entries. Custom rules
+ * and the chat types that are still forwarded unmatched come from config. Everything is compiled
+ * once by {@link #compile(Set)} when the service starts, {@link #match} only runs the compiled
+ * patterns.
+ */
+@Slf4j
+@Singleton
+public class ChatRuleEngine {
+
+    private static final Pattern GROUP_NAME = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+    // EVENT_TYPE, optionally followed by the chat types the rule applies to, e.g. RAID_LOOT[GAMEMESSAGE,CLAN_MESSAGE]
+    private static final Pattern RULE_PREFIX = Pattern.compile("([A-Z][A-Z0-9_]*)(?:\\[([A-Za-z_, ]*)])?");
+    private static final Set<ChatMessageType> GAME_MESSAGES = EnumSet.of(ChatMessageType.GAMEMESSAGE, ChatMessageType.SPAM);
+
+    private static final List<ChatRule> BUILT_IN_RULES = List.of(
+            new ChatRule("KILL_COUNT", GAME_MESSAGES,
+                    // Follows RuneLite's ChatCommandsPlugin KILLCOUNT_PATTERN, agility lap counts are left out
+                    "^Your (?!.* lap count is: )(?:completion count for |subdued |completed )?(?<boss>.+?) (?:(?:kill|harvest|completion) )?(?:count )?is: (?<count>[\\d,]+)",
+                    Set.of("count")),
+            new ChatRule("VALUABLE_DROP", GAME_MESSAGES,
+                    "Valuable drop: (?:(?<quantity>[\\d,]+) x )?(?<item>.+?) \\((?<value>[\\d,]+) coins\\)",
+                    Set.of("quantity", "value")),
+            new ChatRule("PET_DROP", GAME_MESSAGES,
+                    "You (?:have a funny feeling like you(?:'re being| would have been) followed|feel something weird sneaking into your backpack)",
+                    Collections.emptySet()),
+            new ChatRule("COLLECTION_LOG", GAME_MESSAGES,
+                    "New item added to your collection log: (?<item>.+)",
+                    Collections.emptySet())
+    );
+
+    private final EventTrackerConfig config;
+
+    // Replaced as a whole by compile(), so match() never sees a half built rule set
+    private volatile List<ChatRule> rules = BUILT_IN_RULES;
+    private volatile Set<ChatMessageType> forwardedTypes = EnumSet.noneOf(ChatMessageType.class);
+
+    @Inject
+    public ChatRuleEngine(EventTrackerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Compiles the built-in and configured rules. Custom rules only see game messages unless they
+     * list their chat types, so other players can't trigger them by typing a matching line. Invalid
+     * rules, rules named after a built-in or reserved event type, and unknown chat types are logged
+     * and skipped.
+     *
+     * @param reservedEventTypes event types the plugin sends itself, which custom rules can't take over
+     */
+    public void compile(Set<String> reservedEventTypes) {
+        List<ChatRule> compiled = new ArrayList<>(BUILT_IN_RULES);
+        for (String line : config.customChatRules().split("\\R")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            Matcher prefix = RULE_PREFIX.matcher(separator > 0 ? line.substring(0, separator).trim() : "");
+            if (!prefix.matches()) {
+                log.warn("Skipping chat rule without an EVENT_TYPE=regex prefix: {}", line);
+                continue;
+            }
+            String eventType = prefix.group(1);
+            if (reservedEventTypes.contains(eventType) || isBuiltIn(eventType)) {
+                log.warn("Skipping chat rule {}, that event type is already sent by the plugin", eventType);
+                continue;
+            }
+            Set<ChatMessageType> types = prefix.group(2) != null ? parseChatTypes(prefix.group(2)) : GAME_MESSAGES;
+            try {
+                compiled.add(new ChatRule(eventType, types, line.substring(separator + 1).trim(), Collections.emptySet()));
+            } catch (PatternSyntaxException e) {
+                log.warn("Skipping chat rule {} with an invalid pattern: {}", eventType, e.getDescription());
+            }
+        }
+
+        Set<ChatMessageType> types = parseChatTypes(config.forwardedChatTypes());
+        rules = Collections.unmodifiableList(compiled);
+        forwardedTypes = types;
+        log.debug("Compiled {} chat rules, forwarding unmatched {}", compiled.size(), types);
+    }
+
+    private static boolean isBuiltIn(String eventType) {
+        for (ChatRule rule : BUILT_IN_RULES) {
+            if (rule.eventType.equals(eventType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<ChatMessageType> parseChatTypes(String names) {
+        Set<ChatMessageType> types = EnumSet.noneOf(ChatMessageType.class);
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            try {
+                types.add(ChatMessageType.valueOf(name.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring unknown chat type {}", name);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * @return the event data schema of every compiled rule, keyed by event type
+     */
+    public Map<String, Map<String, String>> getSchemas() {
+        Map<String, Map<String, String>> schemas = new LinkedHashMap<>();
+        for (ChatRule rule : rules) {
+            Map<String, String> schema = new LinkedHashMap<>();
+            schema.put("chatType", "String");
+            schema.put("message", "String");
+            for (String group : rule.groups) {
+                schema.put(group, rule.numericGroups.contains(group) ? "long" : "String");
+            }
+            schemas.putIfAbsent(rule.eventType, schema);
+        }
+        return schemas;
+    }
+
+    /**
+     * Runs a chat line through the rules.
+     *
+     * @return the event for the first rule that matches, a CHAT_MESSAGE for an unmatched line of a
+     * forwarded type, or null when the line should be dropped
+     */
+    public Match match(ChatMessageType type, String name, String message) {
+        String text = null;
+        for (ChatRule rule : rules) {
+            if (!rule.types.contains(type)) {
+                continue;
+            }
+            if (text == null) {
+                text = Text.removeTags(message);
+            }
+            Matcher matcher = rule.pattern.matcher(text);
+            if (!matcher.find()) {
+                continue;
+            }
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            data.put("chatType", type.toString());
+            data.put("message", text);
+            for (String group : rule.groups) {
+                String value = matcher.group(group);
+                if (value != null) {
+                    data.put(group, rule.numericGroups.contains(group) ? Long.parseLong(value.replace(",", "")) : value);
+                }
+            }
+            return new Match(rule.eventType, data);
+        }
+
+        if (!forwardedTypes.contains(type)) {
+            return null;
+        }
+        Map<String, Object> data = new ConcurrentHashMap<>();
+        data.put("type", type.toString());
+        data.put("name", name);
+        data.put("message", message);
+        return new Match("CHAT_MESSAGE", data);
+    }
+
+    public static final class Match {
+
+        private final String eventType;
+        private final Map<String, Object> data;
+
+        private Match(String eventType, Map<String, Object> data) {
+            this.eventType = eventType;
+            this.data = data;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public Map<String, Object> getData() {
+            return data;
+        }
+    }
+
+    private static final class ChatRule {
+
+        private final String eventType;
+        private final Set<ChatMessageType> types;
+        private final Pattern pattern;
+        private final List<String> groups = new ArrayList<>();
+        private final Set<String> numericGroups;
+
+        private ChatRule(String eventType, Set<ChatMessageType> types, String regex, Set<String> numericGroups) {
+            this.eventType = eventType;
+            this.types = types;
+            this.pattern = Pattern.compile(regex);
+            this.numericGroups = numericGroups;
+            // Java 11's Pattern can't list its named groups, so read them from the source
+            Matcher names = GROUP_NAME.matcher(regex);
+            while (names.find()) {
+                groups.add(names.group(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.gson.Gson;
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers events to the webhook in the order they were sent.
+ * <p>
+ * Every event gets a sequence number and a session-unique {@code eventId} the receiver can
+ * deduplicate on. Events stay in the backlog until the receiver acknowledges them, and the
+ * checkpoint (the highest sequence up to which everything is acknowledged) only moves on an
+ * acknowledgement. Posts go out in batches, with at most {@code replayMaxInFlight} batches
+ * outstanding and at most {@code replayRatePerSecond} events per second. On a failed post the
+ * engine pauses and rewinds to the checkpoint, and {@link #resume()} replays from there once the
+ * connection is back.
+ * <p>
+ * Only a 2xx or 409 acknowledges events, and a batch refused with 413 is split in two. Any other
+ * status pauses delivery with the events kept. The engine then resumes by itself after an exponential
+ * backoff starting at {@code retryDelaySeconds}, or after the receiver's {@code Retry-After} on a 429
+ * or 503. A failed connection is reported to the {@link DeliveryListener} instead, which calls
+ * {@link #resume()} once the webhook is reachable again.
+ */
+@Slf4j
+@Singleton
+public class EventReplayEngine {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final long PUMP_INTERVAL_MILLIS = 100;
+    private static final long MAX_BACKOFF_SECONDS = 300;
+
+    private final OkHttpClient okHttpClient;
+    private final Gson gson;
+    private final EventTrackerConfig config;
+
+    // Unacknowledged events, oldest first
+    private final ConcurrentSkipListMap<Long, Map<String, Object>> backlog = new ConcurrentSkipListMap<>();
+
+    private String sessionId = UUID.randomUUID().toString();
+    private long lastSequence;
+    private long checkpoint;
+    // Highest sequence handed to OkHttp since the last rewind
+    private long dispatchCursor;
+    private int inFlightBatches;
+    // Lowered when the receiver answers 413, so later batches fit without being split again
+    private int batchSizeLimit = Integer.MAX_VALUE;
+    private boolean paused = true;
+    private double rateTokens;
+    private long lastRefillNanos;
+
+    // Set from the first failed post until a post is acknowledged again
+    private boolean failing;
+    private int consecutiveRejections;
+    // While set, resume() waits for the scheduled retry instead of posting straight away
+    private boolean backingOff;
+
+    private DeliveryListener listener;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> pumpTask;
+    private ScheduledFuture<?> retryTask;
+    // Set while events go to a local relay hub instead of the webhook
+    private volatile String endpointOverride;
+
+    @Inject
+    public EventReplayEngine(OkHttpClient okHttpClient, Gson gson, EventTrackerConfig config) {
+        this.okHttpClient = okHttpClient;
+        this.gson = gson;
+        this.config = config;
+    }
+
+    /**
+     * Starts a new delivery session. Events still unacknowledged from an earlier session keep
+     * their ids and are replayed first. The engine starts paused, call {@link #resume()} once the
+     * webhook is known to be reachable.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler, DeliveryListener listener) {
+        this.sessionId = UUID.randomUUID().toString();
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.failing = false;
+        this.consecutiveRejections = 0;
+        this.backingOff = false;
+        this.dispatchCursor = checkpoint;
+        this.inFlightBatches = 0;
+        this.batchSizeLimit = Integer.MAX_VALUE;
+        this.paused = true;
+        this.rateTokens = 0;
+        this.lastRefillNanos = System.nanoTime();
+        // Picks up events that were held back by the rate limit
+        this.pumpTask = scheduler.scheduleAtFixedRate(this::pump, PUMP_INTERVAL_MILLIS, PUMP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (pumpTask != null) {
+            pumpTask.cancel(false);
+            pumpTask = null;
+        }
+        if (retryTask != null) {
+            retryTask.cancel(false);
+            retryTask = null;
+        }
+        backingOff = false;
+        paused = true;
+    }
+
+    /**
+     * Assigns the event its sequence number and, unless it already has one, its idempotency key,
+     * and queues it for delivery.
+     */
+    public void enqueue(Map<String, Object> event) {
+        synchronized (this) {
+            assignIdentity(event);
+            backlog.put((Long) event.get("sequence"), event);
+        }
+        pump();
+    }
+
+    /**
+     * Posts the event on the calling thread, bypassing the backlog. Used for SESSION_CLOSED,
+     * which has to go out before the plugin shuts down.
+     */
+    public void deliverSynchronously(Map<String, Object> event) {
+        synchronized (this) {
+            assignIdentity(event);
+        }
+        try {
+            okHttpClient.newCall(buildRequest(List.of(event))).execute().close();
+            log.info("Sent synchronous event: {}", event.get("eventType"));
+        } catch (IOException e) {
+            log.error("Error sending synchronous event", e);
+        }
+    }
+
+    /**
+     * Posts what is left in the backlog on the calling thread until it is empty, a post fails or
+     * the time is up. Used on shutdown, after {@link #stop()}. Batches that were still in flight
+     * may be posted twice, the receiver drops those by eventId.
+     */
+    public void drain(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int batchSize;
+        synchronized (this) {
+            batchSize = Math.max(1, Math.min(config.replayBatchSize(), batchSizeLimit));
+        }
+        while (System.nanoTime() < deadline) {
+            List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+            for (Map<String, Object> event : backlog.values()) {
+                if (batch.size() >= batchSize) {
+                    break;
+                }
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try (Response response = okHttpClient.newCall(buildRequest(batch)).execute()) {
+                if (!response.isSuccessful() && response.code() != 409) {
+                    log.warn("Unexpected code {} while draining events", response.code());
+                    break;
+                }
+            } catch (IOException e) {
+                log.warn("Draining events failed: {}", e.getMessage());
+                break;
+            }
+            synchronized (this) {
+                removeAcknowledged(batch);
+            }
+        }
+        if (!backlog.isEmpty()) {
+            log.warn("{} events were not delivered before shutdown, they are replayed on the next start", backlog.size());
+        }
+    }
+
+    /**
+     * Resumes delivery from the checkpoint. Does nothing while a backoff after an error status is
+     * pending, as the engine resumes by itself once it runs out.
+     */
+    public synchronized void resume() {
+        if (!paused || backingOff) {
+            return;
+        }
+        log.info("Replaying {} unacknowledged events from checkpoint {}", backlog.size(), checkpoint);
+        paused = false;
+        dispatchCursor = checkpoint;
+        lastRefillNanos = System.nanoTime();
+        pumpLocked();
+    }
+
+    /**
+     * Sends events to the given endpoint instead of the configured webhook, or back to the webhook
+     * when null. Unacknowledged events are replayed to the new endpoint on the next resume.
+     */
+    public void setEndpointOverride(String endpoint) {
+        this.endpointOverride = endpoint;
+    }
+
+    // True from a failed post until the next acknowledged one
+    public synchronized boolean isFailing() {
+        return failing;
+    }
+
+    public synchronized long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public int getBacklogSize() {
+        return backlog.size();
+    }
+
+    private void pump() {
+        synchronized (this) {
+            pumpLocked();
+        }
+    }
+
+    private void pumpLocked() {
+        if (paused) {
+            return;
+        }
+        refillRateTokens();
+        int maxInFlight = Math.max(1, config.replayMaxInFlight());
+        int batchSize = Math.max(1, Math.min(config.replayBatchSize(), batchSizeLimit));
+        while (inFlightBatches < maxInFlight && rateTokens >= 1) {
+            List<Map<String, Object>> batch = new ArrayList<>(Math.min(batchSize, (int) rateTokens));
+            for (Map<String, Object> event : backlog.tailMap(dispatchCursor, false).values()) {
+                if (batch.size() >= batchSize || batch.size() >= (int) rateTokens) {
+                    break;
+                }
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            rateTokens -= batch.size();
+            dispatchCursor = (Long) batch.get(batch.size() - 1).get("sequence");
+            inFlightBatches++;
+            post(batch);
+        }
+    }
+
+    private void refillRateTokens() {
+        long now = System.nanoTime();
+        int ratePerSecond = Math.max(1, config.replayRatePerSecond());
+        rateTokens = Math.min(ratePerSecond, rateTokens + (now - lastRefillNanos) * ratePerSecond / 1_000_000_000.0);
+        lastRefillNanos = now;
+    }
+
+    private void post(List<Map<String, Object>> batch) {
+        okHttpClient.newCall(buildRequest(batch)).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                log.debug("Posting {} events failed: {}", batch.size(), e.getMessage());
+                onBatchFailed();
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                int code = response.code();
+                String retryAfter = code == 429 || code == 503 ? response.header("Retry-After") : null;
+                response.close();
+                if (response.isSuccessful() || code == 409) {
+                    // 409: the receiver already has these events
+                    onBatchAcknowledged(batch);
+                } else if (code == 413 && batch.size() > 1) {
+                    log.warn("Receiver refused a batch of {} events as too large, splitting it", batch.size());
+                    onBatchTooLarge(batch);
+                } else if (code == 408 || code == 429 || code >= 500) {
+                    log.warn("Unexpected code {} when posting events, will retry", code);
+                    onBatchRejected(code, retryAfter);
+                } else {
+                    // Usually a wrong endpoint or credential, the events are kept until that is fixed
+                    log.error("Receiver rejected {} events with code {}, pausing delivery with {} events kept", batch.size(), code, backlog.size());
+                    onBatchRejected(code, null);
+                }
+            }
+        });
+    }
+
+    private Request buildRequest(List<Map<String, Object>> batch) {
+        // A batch size of one keeps the original single-object payload
+        String json = config.replayBatchSize() > 1 ? gson.toJson(batch) : gson.toJson(batch.get(0));
+        String endpoint = endpointOverride != null ? endpointOverride : config.postEndpoint();
+        Request.Builder builder = new Request.Builder().url(endpoint).post(RequestBody.create(json, JSON));
+        if (batch.size() == 1) {
+            builder.header("Idempotency-Key", (String) batch.get(0).get("eventId"));
+        }
+        return builder.build();
+    }
+
+    private void onBatchAcknowledged(List<Map<String, Object>> batch) {
+        DeliveryListener recovered = null;
+        synchronized (this) {
+            // Batches from before a restart were not counted again, hence the floor
+            inFlightBatches = Math.max(0, inFlightBatches - 1);
+            removeAcknowledged(batch);
+            consecutiveRejections = 0;
+            if (failing) {
+                failing = false;
+                recovered = listener;
+            }
+            pumpLocked();
+        }
+        if (recovered != null) {
+            recovered.onDeliveryRecovered();
+        }
+    }
+
+    private void removeAcknowledged(List<Map<String, Object>> batch) {
+        for (Map<String, Object> event : batch) {
+            backlog.remove((Long) event.get("sequence"));
+        }
+        checkpoint = backlog.isEmpty() ? lastSequence : backlog.firstKey() - 1;
+    }
+
+    private void onBatchTooLarge(List<Map<String, Object>> batch) {
+        int half = batch.size() / 2;
+        synchronized (this) {
+            batchSizeLimit = Math.min(batchSizeLimit, half);
+            // The two halves take the place of the refused batch
+            inFlightBatches++;
+        }
+        post(new ArrayList<>(batch.subList(0, half)));
+        post(new ArrayList<>(batch.subList(half, batch.size())));
+    }
+
+    private void onBatchFailed() {
+        DeliveryListener callback;
+        synchronized (this) {
+            inFlightBatches = Math.max(0, inFlightBatches - 1);
+            if (paused) {
+                return;
+            }
+            paused = true;
+            failing = true;
+            // Everything after the checkpoint is sent again on resume, the receiver drops duplicates by eventId
+            dispatchCursor = checkpoint;
+            callback = listener;
+        }
+        if (callback != null) {
+            callback.onConnectionLost();
+        }
+    }
+
+    private void onBatchRejected(int code, String retryAfter) {
+        DeliveryListener callback;
+        synchronized (this) {
+            inFlightBatches = Math.max(0, inFlightBatches - 1);
+            if (paused) {
+                return;
+            }
+            paused = true;
+            failing = true;
+            dispatchCursor = checkpoint;
+            long delaySeconds = backoffSeconds(++consecutiveRejections, retryAfter);
+            if (scheduler != null && !scheduler.isShutdown()) {
+                backingOff = true;
+                retryTask = scheduler.schedule(this::resumeAfterBackoff, delaySeconds, TimeUnit.SECONDS);
+                log.info("Retrying delivery in {}s", delaySeconds);
+            }
+            callback = listener;
+        }
+        if (callback != null) {
+            callback.onDeliveryRejected(code);
+        }
+    }
+
+    private void resumeAfterBackoff() {
+        synchronized (this) {
+            backingOff = false;
+            retryTask = null;
+        }
+        resume();
+    }
+
+    private long backoffSeconds(int attempt, String retryAfter) {
+        if (retryAfter != null) {
+            try {
+                return Math.max(0, Math.min(MAX_BACKOFF_SECONDS, Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                // An HTTP date rather than seconds, the normal backoff is close enough
+            }
+        }
+        long base = Math.max(1, config.retryDelaySeconds());
+        return Math.min(MAX_BACKOFF_SECONDS, base << Math.min(attempt - 1, 16));
+    }
+
+    private void assignIdentity(Map<String, Object> event) {
+        long sequence = ++lastSequence;
+        event.put("sequence", sequence);
+        // Events relayed from another client keep the id they were given there
+        event.putIfAbsent("eventId", sessionId + "-" + sequence);
+    }
+
+    /**
+     * Told about delivery problems. Only a lost connection needs outside help, error statuses are
+     * retried by the engine itself.
+     */
+    public interface DeliveryListener {
+
+        // The webhook couldn't be reached, delivery stays paused until resume()
+        void onConnectionLost();
+
+        // The webhook answered with an error status, delivery resumes by itself after a backoff
+        void onDeliveryRejected(int code);
+
+        // A post was acknowledged after a failure
+        void onDeliveryRecovered();
+    }
+}
@@ -70,6 +70,17 @@ public interface EventTrackerConfig extends Config
 		return 1464;
 	}
 
+	@ConfigItem(
+		keyName = "pollServerBackend",
+		name = "Polling Server Backend",
+		description = "The HTTP server behind the local polling API. JDK is lightweight, Javalin is the original server. (Requires plugin restart)",
+		section = connectionSettings
+	)
+	default PollingServerBackend pollServerBackend()
+	{
+		return PollingServerBackend.JDK;
+	}
+
 	@ConfigItem(
 		keyName = "postEndpoint",
 		name = "Webhook Post Endpoint",
@@ -80,6 +91,63 @@ public interface EventTrackerConfig extends Config
 	{
 		return "http://localhost:1664/webhook";
 	}
+
+	@ConfigItem(
+		keyName = "enableRelay",
+		name = "Enable Local Relay",
+		description = "If enabled, clients on the same machine share one connection: the first one serves the polling port and forwards events for the others.",
+		section = connectionSettings
+	)
+	default boolean enableRelay()
+	{
+		return true;
+	}
+
+	@Range(
+		min = 1,
+		max = 32
+	)
+	@ConfigItem(
+		keyName = "replayMaxInFlight",
+		name = "Max In-Flight Posts",
+		description = "How many webhook posts may be awaiting acknowledgement at once. 1 keeps delivery strictly ordered.",
+		section = connectionSettings
+	)
+	default int replayMaxInFlight()
+	{
+		return 4;
+	}
+
+	@Range(
+		min = 1,
+		max = 5000
+	)
+	@ConfigItem(
+		keyName = "replayRatePerSecond",
+		name = "Max Events Per Second",
+		description = "How many events per second are posted to the webhook, both live and when replaying after a reconnect.",
+		section = connectionSettings
+	)
+	default int replayRatePerSecond()
+	{
+		return 200;
+	}
+
+	@Range(
+		min = 1,
+		max = 500
+	)
+	@ConfigItem(
+		keyName = "replayBatchSize",
+		name = "Events Per Post",
+		description = "How many events are sent in one post. Above 1, the webhook receives a JSON array instead of a single event.",
+		section = connectionSettings
+	)
+	default int replayBatchSize()
+	{
+		return 1;
+	}
+
 	@ConfigSection(
 		name = "Event Settings",
 		description = "Configure which events to track and push.",
@@ -98,6 +166,91 @@ public interface EventTrackerConfig extends Config
 		return false;
 	}
 
+	@ConfigItem(
+		keyName = "coalesceHitsplats",
+		name = "Coalesce Hitsplats",
+		description = "If enabled, hitsplats are buffered during a game tick and pushed as one aggregated event per actor per tick.",
+		section = eventSettings
+	)
+	default boolean coalesceHitsplats()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "trackMovementTrails",
+		name = "Track Movement Trails",
+		description = "If enabled, a bounded movement trail is kept for the local player and every NPC, served on /api/trails.",
+		section = eventSettings
+	)
+	default boolean trackMovementTrails()
+	{
+		return true;
+	}
+
+	@Range(
+		min = 16,
+		max = 4096
+	)
+	@ConfigItem(
+		keyName = "movementTrailLength",
+		name = "Movement Trail Length",
+		description = "The number of positions kept per actor before the oldest are overwritten.",
+		section = eventSettings
+	)
+	default int movementTrailLength()
+	{
+		return 512;
+	}
+
+	@ConfigItem(
+		keyName = "enableTickBudget",
+		name = "Enable Tick Budget",
+		description = "If enabled, optional tracking is scaled back while the plugin spends more than its budget on the client thread.",
+		section = eventSettings
+	)
+	default boolean enableTickBudget()
+	{
+		return true;
+	}
+
+	@Range(
+		min = 100,
+		max = 50000
+	)
+	@ConfigItem(
+		keyName = "tickBudgetMicros",
+		name = "Tick Budget (microseconds)",
+		description = "How much client thread time per game tick the plugin may use before it starts scaling back tracking.",
+		section = eventSettings
+	)
+	default int tickBudgetMicros()
+	{
+		return 2000;
+	}
+
+	@ConfigItem(
+		keyName = "forwardedChatTypes",
+		name = "Forwarded Chat Types",
+		description = "Comma-separated chat message types (e.g. CLAN_CHAT, PUBLICCHAT) that are still pushed as CHAT_MESSAGE when no chat rule matches. Leave empty to only push rule matches.",
+		section = eventSettings
+	)
+	default String forwardedChatTypes()
+	{
+		return "CLAN_CHAT,CLAN_MESSAGE";
+	}
+
+	@ConfigItem(
+		keyName = "customChatRules",
+		name = "Custom Chat Rules",
+		description = "One rule per line as EVENT_TYPE=regex, matched against game messages. EVENT_TYPE[CLAN_MESSAGE,...]=regex picks other chat types. Named groups such as (?<item>.+) become event fields. Rules are compiled when the plugin starts.",
+		section = eventSettings
+	)
+	default String customChatRules()
+	{
+		return "";
+	}
+
 	@ConfigSection(
 		name = "Render Settings",
 		description = "Configure rendering-related settings.",
@@ -1,8 +1,9 @@
 package nl.doonline.ZSCompetitions;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.ToNumberPolicy;
 import com.google.inject.Singleton;
-import io.javalin.Javalin;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import net.runelite.api.coords.WorldPoint;
@@ -17,15 +18,16 @@ import okhttp3.*;
 import org.jetbrains.annotations.NotNull;
 
 import javax.inject.Inject;
-import java.awt.Polygon;
 import java.awt.Rectangle;
-import java.awt.Shape;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
@@ -33,73 +35,163 @@ import java.util.stream.Collectors;
 @Singleton
 public class EventTrackerService {
 
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
-
     private final Client client;
     private final ClientThread clientThread;
     private final EventTrackerConfig config;
     private final Gson gson;
+    // Keeps whole numbers in relayed events as longs, plain Gson would forward npcId 11789 as 11789.0
+    private final Gson relayGson;
     private final OkHttpClient okHttpClient;
     private final ChatMessageManager chatMessageManager;
 
     private final List<Map<String, Object>> eventCache = new CopyOnWriteArrayList<>();
     private final Map<String, Map<String, String>> schemaRegistry = new ConcurrentHashMap<>();
-
-    private Javalin pollingServer;
+    // The plugin's own event types, custom chat rules may not reuse them
+    private final Set<String> coreEventTypes;
+    // Only touched on the client thread, insertion order keeps the aggregated events in hit order
+    private final Map<Actor, List<Map<String, Object>>> pendingHitsplats = new LinkedHashMap<>();
+    // Ids of events already accepted from relay clients, so their retries aren't forwarded twice
+    private final Set<String> relayedEventIds = Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_REMEMBERED_RELAYED_EVENT_IDS;
+        }
+    }));
+
+    private static final int POLLING_SERVER_THREADS = 4;
+    private static final long CLIENT_THREAD_TIMEOUT_SECONDS = 5;
+    private static final long SHUTDOWN_DRAIN_MILLIS = 3_000;
+    private static final long SHUTDOWN_FLUSH_MILLIS = 1_000;
+    // Position updates are only pushed every this many ticks once the governor reduces the rate
+    private static final int REDUCED_POSITION_UPDATE_INTERVAL = 4;
+    private static final String RELAY_PING_PATH = "/api/relay/ping";
+    private static final String RELAY_EVENTS_PATH = "/api/relay/events";
+    private static final int MAX_REMEMBERED_RELAYED_EVENT_IDS = 10_000;
+
+    private volatile PollingServer pollingServer;
+    private final Object pollingServerLock = new Object();
     private ScheduledExecutorService scheduler;
 
     private volatile boolean connected = false;
     private volatile boolean temporarilyDisabled = false;
+    // Set while another client on this machine owns the polling port and relays our events
+    private volatile boolean relayClient = false;
     private ScheduledFuture<?> connectionCheckTask;
     private ScheduledFuture<?> popupTask;
 
 
     private final VisionTrackerService visionTrackerService;
+    private final GeometryCacheService geometryCacheService;
+    private final MovementTrailService movementTrailService;
+    private final EventReplayEngine replayEngine;
+    private final TickBudgetGovernor tickBudgetGovernor;
+    private final ChatRuleEngine chatRuleEngine;
 
     @Inject
-    public EventTrackerService(Client client, ClientThread clientThread, EventTrackerConfig config, Gson gson, OkHttpClient okHttpClient, ChatMessageManager chatMessageManager, VisionTrackerService visionTrackerService) {
+    public EventTrackerService(Client client, ClientThread clientThread, EventTrackerConfig config, Gson gson, OkHttpClient okHttpClient, ChatMessageManager chatMessageManager, VisionTrackerService visionTrackerService, GeometryCacheService geometryCacheService, MovementTrailService movementTrailService, EventReplayEngine replayEngine, TickBudgetGovernor tickBudgetGovernor, ChatRuleEngine chatRuleEngine) {
         this.client = client;
         this.clientThread = clientThread;
         this.config = config;
         this.gson = gson;
+        this.relayGson = gson.newBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create();
         this.okHttpClient = okHttpClient;
         this.chatMessageManager = chatMessageManager;
         this.visionTrackerService = visionTrackerService;
+        this.geometryCacheService = geometryCacheService;
+        this.movementTrailService = movementTrailService;
+        this.replayEngine = replayEngine;
+        this.tickBudgetGovernor = tickBudgetGovernor;
+        this.chatRuleEngine = chatRuleEngine;
         registerSchemas();
+        this.coreEventTypes = Set.copyOf(schemaRegistry.keySet());
     }
 
     public void start() {
         log.info("Event Tracker Service started!");
         this.temporarilyDisabled = false;
+        chatRuleEngine.compile(coreEventTypes);
+        // Drops the schemas of rules removed from config since the last start
+        schemaRegistry.keySet().retainAll(coreEventTypes);
+        schemaRegistry.putAll(chatRuleEngine.getSchemas());
         this.scheduler = Executors.newSingleThreadScheduledExecutor();
-        startPollingServer();
+        replayEngine.start(scheduler, new EventReplayEngine.DeliveryListener() {
+            @Override
+            public void onConnectionLost() {
+                EventTrackerService.this.onConnectionLost();
+            }
+
+            @Override
+            public void onDeliveryRejected(int code) {
+                EventTrackerService.this.onDeliveryRejected();
+            }
+
+            @Override
+            public void onDeliveryRecovered() {
+                EventTrackerService.this.onDeliveryRecovered();
+            }
+        });
+        // Enqueued before any game event so the session starts with it, posting happens in the background
         sendSessionEvent("SESSION_STARTED", false);
+        // Binding the server happens in the background, startUp doesn't wait on it
+        ScheduledExecutorService startupScheduler = this.scheduler;
+        scheduler.execute(() -> startPollingServerOrJoinHub(startupScheduler));
 
         if (config.enableConnectionHandling()) {
             startConnectionCheck();
         } else {
             connected = true;
+            replayEngine.resume();
         }
     }
 
     public void stop() {
         log.info("Event Tracker Service stopped!");
+        flushPendingHitsplatsBeforeShutdown();
+        replayEngine.stop();
         if (connected) {
+            // A relay hub holds events other clients already consider delivered, so the backlog goes out first
+            replayEngine.drain(SHUTDOWN_DRAIN_MILLIS);
             sendSessionEvent("SESSION_CLOSED", true);
         }
-        if (pollingServer != null) {
-            pollingServer.stop();
+        PollingServer server;
+        synchronized (pollingServerLock) {
+            if (scheduler != null && !scheduler.isShutdown()) {
+                scheduler.shutdownNow();
+            }
+            server = pollingServer;
+            pollingServer = null;
+        }
+        if (server != null) {
+            server.stop();
+        }
+        relayClient = false;
+        replayEngine.setEndpointOverride(null);
+    }
+
+    private PollingServer createPollingServer() {
+        switch (config.pollServerBackend()) {
+            case JAVALIN:
+                return new JavalinPollingServer(gson);
+            case JDK:
+            default:
+                return new JdkPollingServer(gson, POLLING_SERVER_THREADS);
+        }
+    }
+
+    private void startPollingServerOrJoinHub(ScheduledExecutorService owner) {
+        if (startPollingServer(owner) || !config.enableRelay()) {
+            return;
         }
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdownNow();
+        if (isRelayHubReachable()) {
+            log.info("Port {} is served by another client, relaying events through it", config.pollPort());
+            relayClient = true;
+            replayEngine.setEndpointOverride(relayUrl(RELAY_EVENTS_PATH));
         }
     }
 
-    private void startPollingServer() {
+    private boolean startPollingServer(ScheduledExecutorService owner) {
         try {
-            pollingServer = Javalin.create(config -> {
-                config.jsonMapper(new io.javalin.json.JavalinGson(gson));
-            }).start(config.pollPort());
+            PollingServer pollingServer = createPollingServer();
 
             // HTML endpoint for human-readable browsing
             pollingServer.get("/", ctx -> {
@@ -115,6 +207,7 @@ public class EventTrackerService {
                 sb.append("<li><a href='/api/state/npcs'>npc_view_visible</a></li>");
                 sb.append("<li><a href='/api/state/objects'>object_view_visible</a></li>");
                 sb.append("<li><a href='/api/vision'>vision_data</a></li>");
+                sb.append("<li><a href='/api/trails'>movement_trails</a></li>");
                 sb.append("</ul>");
                 sb.append("<h2>Available Event Schemas:</h2>");
                 sb.append("<ul>");
@@ -139,64 +232,200 @@ public class EventTrackerService {
             pollingServer.get("/api/client/session", ctx -> ctx.json(eventCache));
 
             // New unified endpoint
-            pollingServer.get("/api/all_game_data", ctx -> {
-                CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
-                clientThread.invoke(() -> {
-                    try {
-                        Map<String, Object> allData = new ConcurrentHashMap<>();
-                        allData.put("player", getPlayerData(client.getLocalPlayer()));
-                        allData.putAll(visionTrackerService.getUnifiedVisionData()); // Add all data from VisionTrackerService
-                        future.complete(allData);
-                    } catch (InterruptedException | ExecutionException e) {
-                        log.error("Error getting unified vision data", e);
-                        future.completeExceptionally(e);
-                    }
-                });
+            pollingServer.get("/api/all_game_data", ctx -> respondFromClientThread(ctx, "GET /api/all_game_data", () -> {
+                Map<String, Object> allData = new ConcurrentHashMap<>();
+                allData.put("player", getPlayerData(client.getLocalPlayer()));
+                allData.putAll(visionTrackerService.getUnifiedVisionData()); // Add all data from VisionTrackerService
+                return allData;
+            }));
+
+            pollingServer.get("/api/state/npcs", ctx -> respondFromClientThread(ctx, "GET /api/state/npcs", visionTrackerService::getNpcData));
+
+            pollingServer.get("/api/state/player", ctx -> respondFromClientThread(ctx, "GET /api/state/player", () -> getPlayerData(client.getLocalPlayer())));
+
+            pollingServer.get("/api/trails", ctx -> {
+                int fromTick;
                 try {
-                    ctx.json(future.get());
-                } catch (InterruptedException | ExecutionException e) {
-                    ctx.status(500).result("Error processing request on client thread: " + e.getMessage());
+                    String fromTickParam = ctx.queryParam("fromTick");
+                    fromTick = fromTickParam != null ? Integer.parseInt(fromTickParam) : 0;
+                } catch (NumberFormatException e) {
+                    ctx.status(400).result("fromTick must be a tick number");
+                    return;
+                }
+                String actor = ctx.queryParam("actor");
+                if (actor == null) {
+                    ctx.json(movementTrailService.getTrails(fromTick));
+                    return;
+                }
+                Map<String, Object> trail = movementTrailService.getTrail(actor, fromTick);
+                if (trail != null) {
+                    ctx.json(trail);
+                } else {
+                    ctx.status(404).result("No trail for actor: " + actor);
                 }
             });
 
-            pollingServer.get("/api/state/player", ctx -> {
-                CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
-                clientThread.invoke(() -> {
-                    future.complete(getPlayerData(client.getLocalPlayer()));
-                });
-                try {
-                    ctx.json(future.get());
-                } catch (InterruptedException | ExecutionException e) {
-                    ctx.status(500).result("Error processing request on client thread: " + e.getMessage());
+            pollingServer.get("/api/schema/{eventType}", ctx -> {
+                String eventType = ctx.pathParam("eventType");
+                if (schemaRegistry.containsKey(eventType)) {
+                    ctx.json(schemaRegistry.get(eventType));
+                } else {
+                    ctx.status(404).result("Schema not found for event type: " + eventType);
                 }
             });
 
+            if (config.enableRelay()) {
+                pollingServer.get(RELAY_PING_PATH, localOnly(ctx -> ctx.json(Map.of("hub", true))));
+                pollingServer.post(RELAY_EVENTS_PATH, localOnly(ctx -> {
+                    if (temporarilyDisabled) {
+                        // Nothing would forward them, so the client keeps its events and backs off
+                        ctx.status(503).result("Relay hub is disabled for this session");
+                        return;
+                    }
+                    try {
+                        ctx.json(Map.of("accepted", acceptRelayedEvents(ctx.body())));
+                    } catch (JsonParseException e) {
+                        ctx.status(400).result("Malformed events: " + e.getMessage());
+                    }
+                }));
+            }
 
+            pollingServer.start(config.pollPort());
+            // Checked and published under the lock stop() takes, so a server can't slip past it still bound
+            boolean published;
+            synchronized (pollingServerLock) {
+                published = !owner.isShutdown();
+                if (published) {
+                    this.pollingServer = pollingServer;
+                }
+            }
+            if (!published) {
+                // The service was stopped while the server was still binding
+                pollingServer.stop();
+                return true;
+            }
+            log.info("Polling server ({}) started on port {}", config.pollServerBackend(), config.pollPort());
+            return true;
+        } catch (Exception e) {
+            if (config.enableRelay()) {
+                log.info("Could not bind polling server on port {}: {}", config.pollPort(), e.getMessage());
+            } else {
+                log.error("Failed to start polling server", e);
+            }
+            return false;
+        }
+    }
 
+    /**
+     * Runs the lookup on the client thread and responds with its result. The wait is bounded, so
+     * a lookup that fails or never gets to run can't hold one of the server's threads forever.
+     */
+    private <T> void respondFromClientThread(PollingContext ctx, String handler, Callable<T> lookup) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        clientThread.invoke(() -> {
+            if (future.isDone()) {
+                // The request already timed out
+                return;
+            }
+            tickBudgetGovernor.measure(handler, () -> {
+                try {
+                    future.complete(lookup.call());
+                } catch (Exception e) {
+                    log.error("Error handling {} on the client thread", handler, e);
+                    future.completeExceptionally(e);
+                }
+            });
+        });
+        try {
+            ctx.json(future.get(CLIENT_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            ctx.status(503).result("Timed out waiting for the client thread");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ctx.status(500).result("Interrupted while waiting for the client thread");
+        } catch (ExecutionException e) {
+            ctx.status(500).result("Error processing request on client thread: " + e.getCause().getMessage());
+        }
+    }
 
+    // The server listens on every interface, but relay clients are always on this machine. Anyone
+    // else could post events under an account that isn't theirs.
+    private static PollingHandler localOnly(PollingHandler handler) {
+        return ctx -> {
+            InetAddress remote = ctx.remoteAddress();
+            if (remote == null || !remote.isLoopbackAddress()) {
+                ctx.status(403).result("Relay endpoints only accept clients on this machine");
+                return;
+            }
+            handler.handle(ctx);
+        };
+    }
 
+    private String relayUrl(String path) {
+        return "http://127.0.0.1:" + config.pollPort() + path;
+    }
 
+    private boolean isRelayHubReachable() {
+        Request request = new Request.Builder().url(relayUrl(RELAY_PING_PATH)).get().build();
+        try (Response response = okHttpClient.newCall(request).execute()) {
+            return response.isSuccessful();
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
-            pollingServer.get("/api/schema/{eventType}", ctx -> {
-                String eventType = ctx.pathParam("eventType");
-                if (schemaRegistry.containsKey(eventType)) {
-                    ctx.json(schemaRegistry.get(eventType));
-                } else {
-                    ctx.status(404).result("Schema not found for event type: " + eventType);
+    /**
+     * Merges events posted by relay clients into this client's stream. They keep their own
+     * eventId and account, and go upstream through this client's replay engine.
+     *
+     * @return the number of events that were new
+     */
+    private int acceptRelayedEvents(String body) {
+        Object payload = relayGson.fromJson(body, Object.class);
+        List<?> events = payload instanceof List ? (List<?>) payload : Collections.singletonList(payload);
+        int accepted = 0;
+        for (Object item : events) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> event = new ConcurrentHashMap<>();
+            ((Map<?, ?>) item).forEach((key, value) -> {
+                if (key != null && value != null) {
+                    event.put(key.toString(), value);
                 }
             });
+            Object eventId = event.get("eventId");
+            if (eventId != null && !relayedEventIds.add(eventId.toString())) {
+                continue;
+            }
+            event.putIfAbsent("account", "N/A");
+            event.put("relayed", true);
+            eventCache.add(event);
+            replayEngine.enqueue(event);
+            accepted++;
+        }
+        return accepted;
+    }
 
-            log.info("Polling server started on port {}", config.pollPort());
-        } catch (Exception e) {
-            log.error("Failed to start polling server", e);
+    // The hub went away, so take over its port and talk to the webhook directly
+    private void promoteToRelayHub() {
+        if (startPollingServer(scheduler)) {
+            log.info("Relay hub is gone, this client now serves port {}", config.pollPort());
+            relayClient = false;
+            replayEngine.setEndpointOverride(null);
         }
     }
 
     private static @NotNull Map<String, String> getStringStringMap() {
         Map<String, String> endpoints = new ConcurrentHashMap<>();
         endpoints.put("/api", "This JSON index.");
-        endpoints.put("/api/client/session", "GET a JSON array of all cached game events.");
+        endpoints.put("/api/client/session", "GET a JSON array of all cached game events, including those relayed from other local clients.");
+        endpoints.put("/api/relay/events", "POST events from another local client, used by relay mode.");
+        endpoints.put("/api/state/player", "GET the local player's world position and footprint.");
+        endpoints.put("/api/state/npcs", "GET the visible NPCs with their footprints and bounding boxes.");
         endpoints.put("/api/all_game_data", "GET a single JSON object containing all visible game data (player, tiles, NPCs, objects, ground items).");
+        endpoints.put("/api/trails?actor=..&fromTick=..", "GET movement trails as [tick, x, y, plane] points. actor is 'player' or 'npc-<index>', both parameters are optional.");
         endpoints.put("/api/schema/{eventType}", "GET the data schema for a specific event type.");
         return endpoints;
     }
@@ -209,7 +438,7 @@ public class EventTrackerService {
         Map<String, Object> playerData = new ConcurrentHashMap<>();
         playerData.put("playerName", player.getName());
 
-        WorldPoint worldPoint = player.getWorldLocation();
+        WorldPoint worldPoint = geometryCacheService.getWorldLocation(player);
         if (worldPoint != null) {
             Map<String, Integer> worldPos = new ConcurrentHashMap<>();
             worldPos.put("x", worldPoint.getX());
@@ -218,20 +447,9 @@ public class EventTrackerService {
             playerData.put("worldPosition", worldPos);
         }
 
-        Polygon occupiedTiles = player.getCanvasTilePoly();
-        if (occupiedTiles != null) {
-            List<Map<String, Object>> tiles = new ArrayList<>();
-            Rectangle bounds = occupiedTiles.getBounds();
-            for (int i = bounds.x; i < bounds.x + bounds.width; i++) {
-                for (int j = bounds.y; j < bounds.y + bounds.height; j++) {
-                    Map<String, Object> tile = new ConcurrentHashMap<>();
-                    tile.put("x", i);
-                    tile.put("y", j);
-                    tile.put("plane", player.getWorldLocation().getPlane());
-                    tiles.add(tile);
-                }
-            }
-            playerData.put("occupiedTiles", tiles);
+        ActorFootprint footprint = geometryCacheService.getFootprint(player);
+        if (footprint != null) {
+            playerData.put("footprint", footprint.toMap());
         }
 
         return playerData;
@@ -246,28 +464,29 @@ public class EventTrackerService {
         schemaRegistry.put("STAT_CHANGED", Map.of("skill", "String", "xp", "long", "level", "int", "boostedLevel", "int"));
         schemaRegistry.put("ACTOR_DEATH", Map.of("actorName", "String", "boundingBox", "object"));
         schemaRegistry.put("HITSPLAT_APPLIED", Map.of("actorName", "String", "hitsplatType", "int", "amount", "int", "boundingBox", "object"));
+        schemaRegistry.put("HITSPLATS_AGGREGATED", Map.of("actorName", "String", "tick", "int", "hitCount", "int", "totalAmount", "int", "totalsByType", "object", "hitsplats", "array", "boundingBox", "object"));
         schemaRegistry.put("NPC_SPAWNED", Map.of("npcId", "int", "npcName", "String", "boundingBox", "object"));
         schemaRegistry.put("NPC_DESPAWNED", Map.of("npcId", "int", "npcName", "String"));
         schemaRegistry.put("ITEM_CONTAINER_CHANGED", Map.of("containerId", "int", "itemCount", "int"));
         schemaRegistry.put("CHAT_MESSAGE", Map.of("type", "String", "name", "String", "message", "String"));
         schemaRegistry.put("SESSION_STARTED", Collections.emptyMap());
         schemaRegistry.put("SESSION_CLOSED", Collections.emptyMap());
-        schemaRegistry.put("ACTOR_POSITION_UPDATE", Map.of("actorName", "String", "actorId", "int", "boundingBox", "object"));
+        schemaRegistry.put("TRACKING_LEVEL_CHANGED", Map.of("previousLevel", "String", "level", "String", "tickNanos", "long", "budgetNanos", "long", "handlerNanos", "object"));
+        schemaRegistry.put("ACTOR_POSITION_UPDATE", Map.of("actorName", "String", "actorId", "int", "boundingBox", "object", "worldPosition", "object"));
     }
 
     private Map<String, Integer> getBoundingBox(Actor actor) {
-        return getBoundingBoxForShape(actor != null ? actor.getConvexHull() : null);
+        return getBoundingBoxForBounds(geometryCacheService.getHullBounds(actor));
     }
 
     private Map<String, Integer> getBoundingBox(GameObject gameObject) {
-        return getBoundingBoxForShape(gameObject != null ? gameObject.getConvexHull() : null);
+        return getBoundingBoxForBounds(geometryCacheService.getHullBounds(gameObject));
     }
 
-    private Map<String, Integer> getBoundingBoxForShape(Shape hull) {
-        if (hull == null) {
+    private Map<String, Integer> getBoundingBoxForBounds(Rectangle bounds) {
+        if (bounds == null) {
             return Collections.emptyMap();
         }
-        Rectangle bounds = hull.getBounds();
         return Map.of("x", bounds.x, "y", bounds.y, "width", bounds.width, "height", bounds.height);
     }
 
@@ -286,36 +505,58 @@ public class EventTrackerService {
     }
 
     private void checkConnection() {
-        Request request = new Request.Builder().url(config.postEndpoint()).head().build();
+        // Relay clients only need the hub, the hub checks the webhook for everyone
+        Request request = relayClient
+                ? new Request.Builder().url(relayUrl(RELAY_PING_PATH)).get().build()
+                : new Request.Builder().url(config.postEndpoint()).head().build();
         try {
             Response response = okHttpClient.newCall(request).execute();
             if (response.isSuccessful()) {
-                log.info("Successfully reconnected to host.");
+                // Only an acknowledged post counts as recovered, so the popup stays scheduled until then
+                log.info("Host is reachable again, resuming delivery.");
                 connected = true;
                 if (connectionCheckTask != null) {
                     connectionCheckTask.cancel(false);
                 }
-                if (popupTask != null) {
-                    popupTask.cancel(false);
-                }
-                flushEventCache();
+                replayEngine.resume();
             }
             response.close();
         } catch (IOException e) {
             log.debug("Connection check failed: {}", e.getMessage());
+            if (relayClient) {
+                promoteToRelayHub();
+            }
+        }
+    }
+
+    private void onConnectionLost() {
+        if (config.enableConnectionHandling()) {
+            if (connected) {
+                startConnectionCheck();
+            }
+        } else if (scheduler != null && !scheduler.isShutdown()) {
+            // Without connection handling nobody probes the host, so just retry after the delay
+            scheduler.schedule(replayEngine::resume, config.retryDelaySeconds(), TimeUnit.SECONDS);
         }
     }
 
-    private void flushEventCache() {
-        log.info("Flushing {} events from cache...", eventCache.size());
-        for (Map<String, Object> event : eventCache) {
-            postEvent(event, false);
+    // The engine backs off and retries by itself, a host that keeps refusing still ends in the popup
+    private void onDeliveryRejected() {
+        if (config.enableConnectionHandling() && !temporarilyDisabled && (popupTask == null || popupTask.isDone())) {
+            popupTask = scheduler.schedule(this::showConnectionFailedPopup, config.popupDelayMinutes(), TimeUnit.MINUTES);
+        }
+    }
+
+    private void onDeliveryRecovered() {
+        log.info("Host accepted events again.");
+        connected = true;
+        if (popupTask != null) {
+            popupTask.cancel(false);
         }
-        eventCache.clear(); // Clear the cache after flushing
     }
 
     private void showConnectionFailedPopup() {
-        if (connected || temporarilyDisabled) {
+        if ((connected && !replayEngine.isFailing()) || temporarilyDisabled) {
             return;
         }
         log.warn("Disabling event tracker for this session due to connection failure.");
@@ -326,7 +567,7 @@ public class EventTrackerService {
 
         final String message = new ChatMessageBuilder()
                 .append(ChatColorType.HIGHLIGHT)
-                .append("Event Tracker: Failed to connect to host. The tracker has been disabled for this session to improve performance. You can re-enable it in the plugin settings.")
+                .append("Event Tracker: Failed to deliver events to host. The tracker has been disabled for this session to improve performance. You can re-enable it in the plugin settings.")
                 .build();
 
         chatMessageManager.queue(QueuedMessage.builder()
@@ -335,7 +576,14 @@ public class EventTrackerService {
                 .build());
     }
 
-    private void sendEvent(String eventType, Map<String, Object> eventData) {
+    // Tells apart the accounts whose events a relay hub merges into one stream
+    private String getAccount() {
+        long accountHash = client.getAccountHash();
+        return accountHash != -1 ? String.valueOf(accountHash) : "N/A";
+    }
+
+    // Package-private so the load test harness can drive the delivery path directly
+    void sendEvent(String eventType, Map<String, Object> eventData) {
         if (temporarilyDisabled) return;
 
         Map<String, Object> event = new ConcurrentHashMap<>();
@@ -347,149 +595,215 @@ public class EventTrackerService {
             playerName = localPlayer.getName();
         }
         event.put("playerName", playerName);
+        event.put("account", getAccount());
 
         event.put("eventType", eventType);
         event.put("eventData", eventData);
 
         eventCache.add(event);
-        if (connected) {
-            postEvent(event, false);
-        }
+        replayEngine.enqueue(event);
     }
 
     private void sendSessionEvent(String eventType, boolean synchronous) {
         Map<String, Object> event = new ConcurrentHashMap<>();
         event.put("timestamp", Instant.now().toString());
         event.put("playerName", "N/A");
+        event.put("account", getAccount());
         event.put("eventType", eventType);
         event.put("eventData", Collections.emptyMap());
 
         eventCache.add(event);
-        postEvent(event, synchronous);
+        if (synchronous) {
+            replayEngine.deliverSynchronously(event);
+        } else {
+            replayEngine.enqueue(event);
+        }
     }
 
-    private void postEvent(Map<String, Object> event, boolean synchronous) {
-        if (temporarilyDisabled) return;
-
-        String json = gson.toJson(event);
-        RequestBody body = RequestBody.create(json, JSON);
-        Request request = new Request.Builder().url(config.postEndpoint()).post(body).build();
-
-        if (synchronous) {
+    // stop() runs on the Swing thread, so the flush is waited for. That way the hits are enqueued
+    // before the engine stops and go out in the drain, ahead of SESSION_CLOSED.
+    private void flushPendingHitsplatsBeforeShutdown() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        clientThread.invoke(() -> {
             try {
-                okHttpClient.newCall(request).execute().close();
-                log.info("Sent synchronous event: {}", event.get("eventType"));
-            } catch (IOException e) {
-                log.error("Error sending synchronous event", e);
+                flushPendingHitsplats();
+            } finally {
+                flushed.complete(null);
             }
-        } else {
-            okHttpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(@NotNull Call call, IOException e) {
-                    if (connected && config.enableConnectionHandling()) {
-                        startConnectionCheck();
-                    }
-                }
+        });
+        try {
+            flushed.get(SHUTDOWN_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Buffered hitsplats were not flushed before shutdown: {}", e.toString());
+        }
+    }
 
-                @Override
-                public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
-                    if (!response.isSuccessful()) {
-                        log.warn("Unexpected code {} when posting event", response.code());
-                    }
-                    response.close();
-                }
-            });
+    private void flushPendingHitsplats() {
+        if (pendingHitsplats.isEmpty()) {
+            return;
+        }
+        int tick = client.getTickCount();
+        for (Map.Entry<Actor, List<Map<String, Object>>> entry : pendingHitsplats.entrySet()) {
+            Actor actor = entry.getKey();
+            List<Map<String, Object>> hits = entry.getValue();
+
+            Map<Integer, Integer> totalsByType = new ConcurrentHashMap<>();
+            int totalAmount = 0;
+            for (Map<String, Object> hit : hits) {
+                int amount = (int) hit.get("amount");
+                totalsByType.merge((int) hit.get("hitsplatType"), amount, Integer::sum);
+                totalAmount += amount;
+            }
+
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            data.put("actorName", actor.getName() != null ? actor.getName() : "N/A");
+            data.put("tick", tick);
+            data.put("hitCount", hits.size());
+            data.put("totalAmount", totalAmount);
+            data.put("totalsByType", totalsByType);
+            // Every individual hit is kept, in the order it was applied
+            data.put("hitsplats", hits);
+            data.put("boundingBox", getBoundingBox(actor));
+            sendEvent("HITSPLATS_AGGREGATED", data);
         }
+        pendingHitsplats.clear();
     }
 
     @Subscribe
     public void onGameTick(GameTick gameTick) {
-        if (config.pushActorPositionUpdates()) {
-            int wvIdMin = -1; // i have no idea what id we need to use so im going to do a few together.
-            int wvIdMax = 1;
-            for (int i=wvIdMin; i<=wvIdMax; i++) {
-                WorldView currentWv = client.getWorldView(i);
-                for (NPC npc : currentWv.npcs()) {
-                    Map<String, Object> data = new ConcurrentHashMap<>();
-                    data.put("actorName", npc.getName());
-                    data.put("actorId", npc.getId());
-                    data.put("boundingBox", getBoundingBox(npc));
-                    data.put("worldViewId", "_" + i + "_wvId");
-                    sendEvent("ACTOR_POSITION_UPDATE", data);
+        tickBudgetGovernor.measure("EventTracker.onGameTick", () -> {
+            // GameTick is posted after the tick's hitsplats, so this emits everything buffered during it
+            flushPendingHitsplats();
+
+            boolean positionUpdateDue = !tickBudgetGovernor.getLevel().atLeast(TrackingLevel.REDUCED_POSITION_RATE)
+                    || client.getTickCount() % REDUCED_POSITION_UPDATE_INTERVAL == 0;
+            if (config.pushActorPositionUpdates() && positionUpdateDue) {
+                int wvIdMin = -1; // i have no idea what id we need to use so im going to do a few together.
+                int wvIdMax = 1;
+                for (int i=wvIdMin; i<=wvIdMax; i++) {
+                    WorldView currentWv = client.getWorldView(i);
+                    for (NPC npc : currentWv.npcs()) {
+                        Map<String, Object> data = new ConcurrentHashMap<>();
+                        data.put("actorName", npc.getName());
+                        data.put("actorId", npc.getId());
+                        data.put("boundingBox", getBoundingBox(npc));
+                        // Still carries a position when the governor has turned hulls off
+                        WorldPoint worldLocation = geometryCacheService.getWorldLocation(npc);
+                        if (worldLocation != null) {
+                            data.put("worldPosition", Map.of("x", worldLocation.getX(), "y", worldLocation.getY(), "plane", worldLocation.getPlane()));
+                        }
+                        data.put("worldViewId", "_" + i + "_wvId");
+                        sendEvent("ACTOR_POSITION_UPDATE", data);
+                    }
                 }
             }
+        });
+    }
+
+    // Runs after every other GameTick subscriber of the plugin, so their time is charged to this tick
+    @Subscribe(priority = -100)
+    public void onGameTickEnd(GameTick gameTick) {
+        Map<String, Object> levelChange = tickBudgetGovernor.endTick();
+        if (levelChange != null) {
+            sendEvent("TRACKING_LEVEL_CHANGED", levelChange);
         }
     }
 
     @Subscribe
     public void onGameStateChanged(GameStateChanged gameStateChanged) {
-        Map<String, Object> data = new ConcurrentHashMap<>();
-        data.put("gameState", gameStateChanged.getGameState().toString());
-        sendEvent("GAME_STATE_CHANGED", data);
+        tickBudgetGovernor.measure("EventTracker.onGameStateChanged", () -> {
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            data.put("gameState", gameStateChanged.getGameState().toString());
+            sendEvent("GAME_STATE_CHANGED", data);
+        });
     }
 
     @Subscribe
     public void onStatChanged(StatChanged statChanged) {
-        Map<String, Object> data = new ConcurrentHashMap<>();
-        data.put("skill", statChanged.getSkill().getName());
-        data.put("xp", statChanged.getXp());
-        data.put("level", statChanged.getLevel());
-        data.put("boostedLevel", statChanged.getBoostedLevel());
-        sendEvent("STAT_CHANGED", data);
+        tickBudgetGovernor.measure("EventTracker.onStatChanged", () -> {
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            data.put("skill", statChanged.getSkill().getName());
+            data.put("xp", statChanged.getXp());
+            data.put("level", statChanged.getLevel());
+            data.put("boostedLevel", statChanged.getBoostedLevel());
+            sendEvent("STAT_CHANGED", data);
+        });
     }
 
     @Subscribe
     public void onActorDeath(ActorDeath actorDeath) {
-        Map<String, Object> data = new ConcurrentHashMap<>();
-        Actor actor = actorDeath.getActor();
-        data.put("actorName", actor.getName());
-        data.put("boundingBox", getBoundingBox(actor));
-        sendEvent("ACTOR_DEATH", data);
+        tickBudgetGovernor.measure("EventTracker.onActorDeath", () -> {
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            Actor actor = actorDeath.getActor();
+            data.put("actorName", actor.getName());
+            data.put("boundingBox", getBoundingBox(actor));
+            sendEvent("ACTOR_DEATH", data);
+        });
     }
 
     @Subscribe
     public void onHitsplatApplied(HitsplatApplied hitsplatApplied) {
-        Map<String, Object> data = new ConcurrentHashMap<>();
-        Actor actor = hitsplatApplied.getActor();
-        data.put("actorName", actor.getName());
-        data.put("hitsplatType", hitsplatApplied.getHitsplat().getHitsplatType());
-        data.put("amount", hitsplatApplied.getHitsplat().getAmount());
-        data.put("boundingBox", getBoundingBox(actor));
-        sendEvent("HITSPLAT_APPLIED", data);
+        tickBudgetGovernor.measure("EventTracker.onHitsplatApplied", () -> {
+            Actor actor = hitsplatApplied.getActor();
+            if (config.coalesceHitsplats()) {
+                // Buffered until the end of the tick, see flushPendingHitsplats()
+                Map<String, Object> hit = new ConcurrentHashMap<>();
+                hit.put("hitsplatType", hitsplatApplied.getHitsplat().getHitsplatType());
+                hit.put("amount", hitsplatApplied.getHitsplat().getAmount());
+                pendingHitsplats.computeIfAbsent(actor, a -> new ArrayList<>()).add(hit);
+                return;
+            }
+
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            data.put("actorName", actor.getName());
+            data.put("hitsplatType", hitsplatApplied.getHitsplat().getHitsplatType());
+            data.put("amount", hitsplatApplied.getHitsplat().getAmount());
+            data.put("boundingBox", getBoundingBox(actor));
+            sendEvent("HITSPLAT_APPLIED", data);
+        });
     }
 
     @Subscribe
     public void onNpcSpawned(NpcSpawned npcSpawned) {
-        Map<String, Object> data = new ConcurrentHashMap<>();
-        NPC npc = npcSpawned.getNpc();
-        data.put("npcId", npc.getId());
-        data.put("npcName", npc.getName());
-        data.put("boundingBox", getBoundingBox(npc));
-        sendEvent("NPC_SPAWNED", data);
+        tickBudgetGovernor.measure("EventTracker.onNpcSpawned", () -> {
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            NPC npc = npcSpawned.getNpc();
+            data.put("npcId", npc.getId());
+            data.put("npcName", npc.getName());
+            data.put("boundingBox", getBoundingBox(npc));
+            sendEvent("NPC_SPAWNED", data);
+        });
     }
 
     @Subscribe
     public void onNpcDespawned(NpcDespawned npcDespawned) {
-        Map<String, Object> data = new ConcurrentHashMap<>();
-        data.put("npcId", npcDespawned.getNpc().getId());
-        data.put("npcName", npcDespawned.getNpc().getName());
-        sendEvent("NPC_DESPAWNED", data);
+        tickBudgetGovernor.measure("EventTracker.onNpcDespawned", () -> {
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            data.put("npcId", npcDespawned.getNpc().getId());
+            data.put("npcName", npcDespawned.getNpc().getName());
+            sendEvent("NPC_DESPAWNED", data);
+        });
     }
 
     @Subscribe
     public void onItemContainerChanged(ItemContainerChanged itemContainerChanged) {
-        Map<String, Object> data = new ConcurrentHashMap<>();
-        data.put("containerId", itemContainerChanged.getContainerId());
-        data.put("itemCount", itemContainerChanged.getItemContainer().count());
-        sendEvent("ITEM_CONTAINER_CHANGED", data);
+        tickBudgetGovernor.measure("EventTracker.onItemContainerChanged", () -> {
+            Map<String, Object> data = new ConcurrentHashMap<>();
+            data.put("containerId", itemContainerChanged.getContainerId());
+            data.put("itemCount", itemContainerChanged.getItemContainer().count());
+            sendEvent("ITEM_CONTAINER_CHANGED", data);
+        });
     }
 
     @Subscribe
     public void onChatMessage(ChatMessage chatMessage) {
-        Map<String, Object> data = new ConcurrentHashMap<>();
-        data.put("type", chatMessage.getType().toString());
-        data.put("name", chatMessage.getName());
-        data.put("message", chatMessage.getMessage());
-        sendEvent("CHAT_MESSAGE", data);
+        tickBudgetGovernor.measure("EventTracker.onChatMessage", () -> {
+            ChatRuleEngine.Match match = chatRuleEngine.match(chatMessage.getType(), chatMessage.getName(), chatMessage.getMessage());
+            if (match != null) {
+                sendEvent(match.getEventType(), match.getData());
+            }
+        });
     }
 }
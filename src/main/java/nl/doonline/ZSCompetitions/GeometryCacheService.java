@@ -0,0 +1,172 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.inject.Singleton;
+import net.runelite.api.Actor;
+import net.runelite.api.Client;
+import net.runelite.api.GameObject;
+import net.runelite.api.NPC;
+import net.runelite.api.NPCComposition;
+import net.runelite.api.coords.LocalPoint;
+import net.runelite.api.coords.WorldPoint;
+
+import javax.inject.Inject;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Shared cache for the geometry of actors and game objects.
+ * <p>
+ * Projecting a model ({@code getConvexHull()}, {@code getClickbox()}) is the most expensive
+ * call the trackers make, and the same actor is usually looked up by several handlers and
+ * endpoints in the same tick. Entries are only valid for the client cycle they were computed
+ * in: as soon as the tick count or game cycle moves on, the whole cache is dropped.
+ * <p>
+ * Must only be used on the client thread.
+ */
+@Singleton
+public class GeometryCacheService {
+
+    private final Client client;
+    private final TickBudgetGovernor tickBudgetGovernor;
+
+    private final Map<Object, Geometry> cache = new IdentityHashMap<>();
+    private int cachedTick = -1;
+    private int cachedCycle = -1;
+
+    @Inject
+    public GeometryCacheService(Client client, TickBudgetGovernor tickBudgetGovernor) {
+        this.client = client;
+        this.tickBudgetGovernor = tickBudgetGovernor;
+    }
+
+    public Rectangle getHullBounds(Actor actor) {
+        if (actor == null || hullsSkipped()) {
+            return null;
+        }
+        Geometry geometry = getGeometry(actor);
+        if (!geometry.hullResolved) {
+            geometry.hullBounds = boundsOf(actor.getConvexHull());
+            geometry.hullResolved = true;
+        }
+        return geometry.hullBounds;
+    }
+
+    public Rectangle getHullBounds(GameObject gameObject) {
+        if (gameObject == null || hullsSkipped()) {
+            return null;
+        }
+        Geometry geometry = getGeometry(gameObject);
+        if (!geometry.hullResolved) {
+            geometry.hullBounds = boundsOf(gameObject.getConvexHull());
+            geometry.hullResolved = true;
+        }
+        return geometry.hullBounds;
+    }
+
+    public Rectangle getClickboxBounds(GameObject gameObject) {
+        if (gameObject == null || hullsSkipped()) {
+            return null;
+        }
+        Geometry geometry = getGeometry(gameObject);
+        if (!geometry.clickboxResolved) {
+            geometry.clickboxBounds = boundsOf(gameObject.getClickbox());
+            geometry.clickboxResolved = true;
+        }
+        return geometry.clickboxBounds;
+    }
+
+    public Polygon getCanvasTilePoly(Actor actor) {
+        if (actor == null) {
+            return null;
+        }
+        Geometry geometry = getGeometry(actor);
+        if (!geometry.canvasTilePolyResolved) {
+            geometry.canvasTilePoly = actor.getCanvasTilePoly();
+            geometry.canvasTilePolyResolved = true;
+        }
+        return geometry.canvasTilePoly;
+    }
+
+    public WorldPoint getWorldLocation(Actor actor) {
+        if (actor == null) {
+            return null;
+        }
+        Geometry geometry = getGeometry(actor);
+        if (geometry.worldLocation == null) {
+            geometry.worldLocation = actor.getWorldLocation();
+        }
+        return geometry.worldLocation;
+    }
+
+    public LocalPoint getLocalLocation(Actor actor) {
+        if (actor == null) {
+            return null;
+        }
+        Geometry geometry = getGeometry(actor);
+        if (geometry.localLocation == null) {
+            geometry.localLocation = actor.getLocalLocation();
+        }
+        return geometry.localLocation;
+    }
+
+    /**
+     * Players always occupy a single tile. For NPCs the world location is already the south-west
+     * tile, and the composition tells how many tiles the NPC spans in each direction.
+     */
+    public ActorFootprint getFootprint(Actor actor) {
+        if (actor == null) {
+            return null;
+        }
+        Geometry geometry = getGeometry(actor);
+        if (geometry.footprint == null) {
+            WorldPoint southWest = getWorldLocation(actor);
+            if (southWest == null) {
+                return null;
+            }
+            int size = 1;
+            if (actor instanceof NPC) {
+                NPCComposition composition = ((NPC) actor).getComposition();
+                if (composition != null) {
+                    size = composition.getSize();
+                }
+            }
+            geometry.footprint = new ActorFootprint(southWest, size, getCanvasTilePoly(actor));
+        }
+        return geometry.footprint;
+    }
+
+    private boolean hullsSkipped() {
+        return tickBudgetGovernor.getLevel().atLeast(TrackingLevel.NO_HULLS);
+    }
+
+    private Geometry getGeometry(Object key) {
+        int tick = client.getTickCount();
+        int cycle = client.getGameCycle();
+        if (tick != cachedTick || cycle != cachedCycle) {
+            cache.clear();
+            cachedTick = tick;
+            cachedCycle = cycle;
+        }
+        return cache.computeIfAbsent(key, k -> new Geometry());
+    }
+
+    private static Rectangle boundsOf(Shape shape) {
+        return shape != null ? shape.getBounds() : null;
+    }
+
+    // Lazily filled, a null value with its resolved flag set means the client had nothing to project
+    private static final class Geometry {
+        private Rectangle hullBounds;
+        private boolean hullResolved;
+        private Rectangle clickboxBounds;
+        private boolean clickboxResolved;
+        private Polygon canvasTilePoly;
+        private boolean canvasTilePolyResolved;
+        private WorldPoint worldLocation;
+        private LocalPoint localLocation;
+        private ActorFootprint footprint;
+    }
+}
@@ -0,0 +1,120 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.gson.Gson;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.json.JavalinGson;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link PollingServer} on Javalin. Javalin and Jetty are still bundled in the plugin jar, but this
+ * class is only loaded when {@link PollingServerBackend#JAVALIN} is selected. With the default
+ * backend Jetty's classes are never loaded and its threads never start.
+ */
+public class JavalinPollingServer implements PollingServer {
+
+    private final Gson gson;
+    private final Map<String, PollingHandler> getRoutes = new LinkedHashMap<>();
+    private final Map<String, PollingHandler> postRoutes = new LinkedHashMap<>();
+
+    private Javalin javalin;
+
+    public JavalinPollingServer(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public void get(String path, PollingHandler handler) {
+        getRoutes.put(path, handler);
+    }
+
+    @Override
+    public void post(String path, PollingHandler handler) {
+        postRoutes.put(path, handler);
+    }
+
+    @Override
+    public void start(int port) {
+        javalin = Javalin.create(config -> {
+            config.jsonMapper(new JavalinGson(gson));
+        });
+        getRoutes.forEach((path, handler) -> javalin.get(path, ctx -> handler.handle(new JavalinContext(ctx))));
+        postRoutes.forEach((path, handler) -> javalin.post(path, ctx -> handler.handle(new JavalinContext(ctx))));
+        try {
+            javalin.start(port);
+        } catch (RuntimeException e) {
+            // Don't leave Jetty half started when the port is taken
+            javalin.stop();
+            throw e;
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (javalin != null) {
+            javalin.stop();
+        }
+    }
+
+    private static final class JavalinContext implements PollingContext {
+
+        private final Context ctx;
+
+        private JavalinContext(Context ctx) {
+            this.ctx = ctx;
+        }
+
+        @Override
+        public String pathParam(String name) {
+            return ctx.pathParam(name);
+        }
+
+        @Override
+        public String queryParam(String name) {
+            return ctx.queryParam(name);
+        }
+
+        @Override
+        public String body() {
+            return ctx.body();
+        }
+
+        @Override
+        public InetAddress remoteAddress() {
+            try {
+                // ip() is the peer's address literal, so this doesn't go to DNS
+                return InetAddress.getByName(ctx.ip());
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public PollingContext status(int status) {
+            ctx.status(status);
+            return this;
+        }
+
+        @Override
+        public PollingContext result(String text) {
+            ctx.result(text);
+            return this;
+        }
+
+        @Override
+        public PollingContext json(Object body) {
+            ctx.json(body);
+            return this;
+        }
+
+        @Override
+        public PollingContext html(String html) {
+            ctx.html(html);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link PollingServer} on the JDK's built-in {@code com.sun.net.httpserver}, served from a small
+ * fixed pool of daemon threads. Most handlers spend their time waiting on the client thread, so a
+ * handful of threads is plenty.
+ */
+@Slf4j
+public class JdkPollingServer implements PollingServer {
+
+    private final Gson gson;
+    private final int threads;
+    private final List<Route> routes = new ArrayList<>();
+
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    public JdkPollingServer(Gson gson, int threads) {
+        this.gson = gson;
+        this.threads = threads;
+    }
+
+    @Override
+    public void get(String path, PollingHandler handler) {
+        routes.add(new Route("GET", path, handler));
+    }
+
+    @Override
+    public void post(String path, PollingHandler handler) {
+        routes.add(new Route("POST", path, handler));
+    }
+
+    @Override
+    public void start(int port) throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "zsc-polling-server-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/", this::dispatch);
+        httpServer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            for (Route route : routes) {
+                if (!route.method.equals(method)) {
+                    continue;
+                }
+                Map<String, String> pathParams = route.match(path);
+                if (pathParams != null) {
+                    JdkContext ctx = new JdkContext(exchange, pathParams);
+                    try {
+                        route.handler.handle(ctx);
+                    } catch (Exception e) {
+                        log.warn("Error handling {} {}", method, path, e);
+                        ctx.status(500).result("Internal server error: " + e.getMessage());
+                    }
+                    ctx.send();
+                    return;
+                }
+            }
+            send(exchange, 404, "text/plain; charset=utf-8", "Not found: " + path);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static final class Route {
+
+        private final String method;
+        private final String[] segments;
+        private final PollingHandler handler;
+
+        private Route(String method, String path, PollingHandler handler) {
+            this.method = method;
+            this.segments = path.split("/");
+            this.handler = handler;
+        }
+
+        // Returns the path parameters when the path matches, or null when it doesn't
+        private Map<String, String> match(String path) {
+            String[] requested = path.split("/");
+            if (requested.length != segments.length) {
+                return null;
+            }
+            Map<String, String> params = Collections.emptyMap();
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.startsWith("{") && segment.endsWith("}")) {
+                    if (params.isEmpty()) {
+                        params = new HashMap<>();
+                    }
+                    params.put(segment.substring(1, segment.length() - 1), requested[i]);
+                } else if (!segment.equals(requested[i])) {
+                    return null;
+                }
+            }
+            return params;
+        }
+    }
+
+    private final class JdkContext implements PollingContext {
+
+        private final HttpExchange exchange;
+        private final Map<String, String> pathParams;
+        private Map<String, String> queryParams;
+
+        private int status = 200;
+        private String contentType = "text/plain; charset=utf-8";
+        private String body = "";
+
+        private JdkContext(HttpExchange exchange, Map<String, String> pathParams) {
+            this.exchange = exchange;
+            this.pathParams = pathParams;
+        }
+
+        @Override
+        public String pathParam(String name) {
+            return pathParams.get(name);
+        }
+
+        @Override
+        public String queryParam(String name) {
+            if (queryParams == null) {
+                queryParams = parseQuery(exchange.getRequestURI().getRawQuery());
+            }
+            return queryParams.get(name);
+        }
+
+        @Override
+        public String body() {
+            try (InputStream in = exchange.getRequestBody()) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public InetAddress remoteAddress() {
+            InetSocketAddress remote = exchange.getRemoteAddress();
+            return remote != null ? remote.getAddress() : null;
+        }
+
+        @Override
+        public PollingContext status(int status) {
+            this.status = status;
+            return this;
+        }
+
+        @Override
+        public PollingContext result(String text) {
+            this.body = text;
+            return this;
+        }
+
+        @Override
+        public PollingContext json(Object body) {
+            this.contentType = "application/json; charset=utf-8";
+            this.body = gson.toJson(body);
+            return this;
+        }
+
+        @Override
+        public PollingContext html(String html) {
+            this.contentType = "text/html; charset=utf-8";
+            this.body = html;
+            return this;
+        }
+
+        private void send() throws IOException {
+            JdkPollingServer.send(exchange, status, contentType, body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> params = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator >= 0 ? pair.substring(0, separator) : pair;
+            String value = separator >= 0 ? pair.substring(separator + 1) : "";
+            // First occurrence wins, like Javalin's queryParam
+            params.putIfAbsent(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,91 @@
+package nl.doonline.ZSCompetitions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fixed-size ring buffer of (tick, x, y, plane) samples for a single actor, stored in one flat
+ * {@code int[]}. Once full, the oldest sample is overwritten. Instances are recycled by
+ * {@link MovementTrailService} when their actor despawns.
+ * <p>
+ * Written on the client thread and read by the polling server, hence the synchronization.
+ */
+public final class MovementTrail {
+
+    private static final int FIELDS = 4;
+
+    private final int capacity;
+    private final int[] samples;
+    private int head;
+    private int size;
+
+    private String actorName;
+    private int actorId;
+
+    public MovementTrail(int capacity) {
+        this.capacity = capacity;
+        this.samples = new int[capacity * FIELDS];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void reset(String actorName, int actorId) {
+        this.actorName = actorName;
+        this.actorId = actorId;
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Records a sample, unless the actor is still standing where the previous sample put it.
+     */
+    public synchronized void record(int tick, int x, int y, int plane) {
+        if (size > 0) {
+            int last = ((head - 1 + capacity) % capacity) * FIELDS;
+            if (samples[last + 1] == x && samples[last + 2] == y && samples[last + 3] == plane) {
+                return;
+            }
+        }
+        int offset = head * FIELDS;
+        samples[offset] = tick;
+        samples[offset + 1] = x;
+        samples[offset + 2] = y;
+        samples[offset + 3] = plane;
+        head = (head + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    /**
+     * Returns the trail from {@code fromTick} on. The first point is the last sample at or before
+     * {@code fromTick}, so it can be older than {@code fromTick}: it is where the actor stood then.
+     */
+    public synchronized Map<String, Object> toMap(String actorKey, int fromTick) {
+        int oldest = (head - size + capacity) % capacity;
+        // Samples are only written on movement, so the last one at or before fromTick is where the
+        // actor stood at fromTick and starts the trail
+        int first = 0;
+        for (int i = 1; i < size && samples[((oldest + i) % capacity) * FIELDS] <= fromTick; i++) {
+            first = i;
+        }
+        List<int[]> points = new ArrayList<>(size - first);
+        for (int i = first; i < size; i++) {
+            int offset = ((oldest + i) % capacity) * FIELDS;
+            points.add(new int[]{samples[offset], samples[offset + 1], samples[offset + 2], samples[offset + 3]});
+        }
+
+        Map<String, Object> trail = new ConcurrentHashMap<>();
+        trail.put("actor", actorKey);
+        trail.put("actorName", actorName != null ? actorName : "N/A");
+        trail.put("actorId", actorId);
+        trail.put("capacity", capacity);
+        // Each point is [tick, x, y, plane], oldest first
+        trail.put("points", points);
+        return trail;
+    }
+}
@@ -0,0 +1,145 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.inject.Singleton;
+import net.runelite.api.Actor;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.WorldView;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.NpcDespawned;
+import net.runelite.client.eventbus.Subscribe;
+
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a bounded {@link MovementTrail} for the local player and every NPC in the top-level world
+ * view, so a route can be replayed without rebuilding it from position events.
+ */
+@Singleton
+public class MovementTrailService {
+
+    public static final String LOCAL_PLAYER_KEY = "player";
+    private static final String NPC_KEY_PREFIX = "npc-";
+    // Upper bound on idle buffers kept around for reuse
+    private static final int MAX_RECYCLED_TRAILS = 64;
+
+    private final Client client;
+    private final EventTrackerConfig config;
+    private final GeometryCacheService geometryCacheService;
+    private final TickBudgetGovernor tickBudgetGovernor;
+
+    private final Map<String, MovementTrail> trails = new ConcurrentHashMap<>();
+    // Only touched on the client thread
+    private final Deque<MovementTrail> recycledTrails = new ArrayDeque<>();
+
+    @Inject
+    public MovementTrailService(Client client, EventTrackerConfig config, GeometryCacheService geometryCacheService, TickBudgetGovernor tickBudgetGovernor) {
+        this.client = client;
+        this.config = config;
+        this.geometryCacheService = geometryCacheService;
+        this.tickBudgetGovernor = tickBudgetGovernor;
+    }
+
+    public void clear() {
+        trails.clear();
+    }
+
+    public static String npcKey(NPC npc) {
+        return NPC_KEY_PREFIX + npc.getIndex();
+    }
+
+    public List<Map<String, Object>> getTrails(int fromTick) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        trails.forEach((key, trail) -> result.add(trail.toMap(key, fromTick)));
+        return result;
+    }
+
+    public Map<String, Object> getTrail(String actorKey, int fromTick) {
+        MovementTrail trail = trails.get(actorKey);
+        return trail != null ? trail.toMap(actorKey, fromTick) : null;
+    }
+
+    @Subscribe
+    public void onGameTick(GameTick gameTick) {
+        tickBudgetGovernor.measure("MovementTrail.onGameTick", () -> {
+            if (!config.trackMovementTrails()) {
+                return;
+            }
+            int tick = client.getTickCount();
+
+            Player localPlayer = client.getLocalPlayer();
+            if (localPlayer != null) {
+                record(LOCAL_PLAYER_KEY, localPlayer, -1, tick);
+            }
+
+            WorldView wv = client.getTopLevelWorldView();
+            if (wv != null) {
+                for (NPC npc : wv.npcs()) {
+                    if (npc != null) {
+                        record(npcKey(npc), npc, npc.getId(), tick);
+                    }
+                }
+            }
+        });
+    }
+
+    @Subscribe
+    public void onNpcDespawned(NpcDespawned npcDespawned) {
+        tickBudgetGovernor.measure("MovementTrail.onNpcDespawned", () -> {
+            release(npcKey(npcDespawned.getNpc()));
+        });
+    }
+
+    @Subscribe
+    public void onGameStateChanged(GameStateChanged gameStateChanged) {
+        tickBudgetGovernor.measure("MovementTrail.onGameStateChanged", () -> {
+            if (gameStateChanged.getGameState() == GameState.LOGIN_SCREEN) {
+                trails.keySet().forEach(this::release);
+            }
+        });
+    }
+
+    private void record(String key, Actor actor, int actorId, int tick) {
+        WorldPoint location = geometryCacheService.getWorldLocation(actor);
+        if (location == null) {
+            return;
+        }
+        MovementTrail trail = trails.get(key);
+        if (trail == null) {
+            trail = obtain(actor.getName(), actorId);
+            trails.put(key, trail);
+        }
+        trail.record(tick, location.getX(), location.getY(), location.getPlane());
+    }
+
+    private MovementTrail obtain(String actorName, int actorId) {
+        int capacity = config.movementTrailLength();
+        MovementTrail trail = recycledTrails.poll();
+        // Buffers recycled under a previous length setting are dropped instead of reused
+        while (trail != null && trail.getCapacity() != capacity) {
+            trail = recycledTrails.poll();
+        }
+        if (trail == null) {
+            trail = new MovementTrail(capacity);
+        }
+        trail.reset(actorName, actorId);
+        return trail;
+    }
+
+    private void release(String key) {
+        MovementTrail trail = trails.remove(key);
+        if (trail != null && recycledTrails.size() < MAX_RECYCLED_TRAILS) {
+            recycledTrails.push(trail);
+        }
+    }
+}
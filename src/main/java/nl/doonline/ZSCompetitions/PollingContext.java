@@ -0,0 +1,28 @@
+package nl.doonline.ZSCompetitions;
+
+import java.net.InetAddress;
+
+/**
+ * The request/response pair handed to a {@link PollingHandler}, modelled on Javalin's context so
+ * the handlers read the same on every {@link PollingServer} backend.
+ */
+public interface PollingContext {
+
+    String pathParam(String name);
+
+    // Returns null when the parameter is absent
+    String queryParam(String name);
+
+    String body();
+
+    // Returns null when the backend can't tell where the request came from
+    InetAddress remoteAddress();
+
+    PollingContext status(int status);
+
+    PollingContext result(String text);
+
+    PollingContext json(Object body);
+
+    PollingContext html(String html);
+}
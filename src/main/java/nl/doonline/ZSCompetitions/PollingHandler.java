@@ -0,0 +1,7 @@
+package nl.doonline.ZSCompetitions;
+
+@FunctionalInterface
+public interface PollingHandler {
+
+    void handle(PollingContext ctx) throws Exception;
+}
@@ -0,0 +1,17 @@
+package nl.doonline.ZSCompetitions;
+
+/**
+ * The embedded HTTP server behind the local API. Routes are registered before {@link #start(int)}
+ * and use Javalin-style paths, so {@code /api/schema/{eventType}} exposes an {@code eventType}
+ * path parameter.
+ */
+public interface PollingServer {
+
+    void get(String path, PollingHandler handler);
+
+    void post(String path, PollingHandler handler);
+
+    void start(int port) throws Exception;
+
+    void stop();
+}
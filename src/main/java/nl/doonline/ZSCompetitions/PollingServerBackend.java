@@ -0,0 +1,8 @@
+package nl.doonline.ZSCompetitions;
+
+public enum PollingServerBackend {
+    // Built on com.sun.net.httpserver, nothing extra to load
+    JDK,
+    // The original Javalin/Jetty server
+    JAVALIN
+}
@@ -0,0 +1,100 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the time the plugin spends on the client thread each tick and steps the
+ * {@link TrackingLevel} down when that exceeds the configured budget.
+ * <p>
+ * Handlers run their work through {@link #measure(String, Runnable)}, and {@link #endTick()} closes
+ * the tick. A level is dropped after a few consecutive ticks over budget, and restored one step at
+ * a time once the plugin has stayed well under budget for a while.
+ * <p>
+ * {@link #measure(String, Runnable)} and {@link #endTick()} must only be called on the client thread.
+ */
+@Slf4j
+@Singleton
+public class TickBudgetGovernor {
+
+    private static final int OVER_BUDGET_TICKS_TO_DEGRADE = 3;
+    private static final int UNDER_BUDGET_TICKS_TO_RECOVER = 50;
+
+    private final EventTrackerConfig config;
+
+    private final Map<String, Long> handlerNanos = new HashMap<>();
+    private long tickNanos;
+    private int overBudgetTicks;
+    private int underBudgetTicks;
+    private volatile TrackingLevel level = TrackingLevel.FULL;
+
+    @Inject
+    public TickBudgetGovernor(EventTrackerConfig config) {
+        this.config = config;
+    }
+
+    public TrackingLevel getLevel() {
+        return level;
+    }
+
+    // Runs the body and charges its time to the handler, also when it throws
+    public void measure(String handler, Runnable body) {
+        long start = System.nanoTime();
+        try {
+            body.run();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            tickNanos += elapsed;
+            handlerNanos.merge(handler, elapsed, Long::sum);
+        }
+    }
+
+    /**
+     * Closes the current tick.
+     *
+     * @return the data for a TRACKING_LEVEL_CHANGED event if the level changed, otherwise null
+     */
+    public Map<String, Object> endTick() {
+        long budgetNanos = config.tickBudgetMicros() * 1_000L;
+        TrackingLevel previous = level;
+        TrackingLevel next = previous;
+
+        if (!config.enableTickBudget()) {
+            next = TrackingLevel.FULL;
+        } else if (tickNanos > budgetNanos) {
+            underBudgetTicks = 0;
+            if (++overBudgetTicks >= OVER_BUDGET_TICKS_TO_DEGRADE && previous != TrackingLevel.NO_HULLS) {
+                next = TrackingLevel.values()[previous.ordinal() + 1];
+                overBudgetTicks = 0;
+            }
+        } else {
+            overBudgetTicks = 0;
+            // Only counts as recovered when there is room to spare, so the level doesn't flap around the budget
+            if (tickNanos <= budgetNanos / 2 && ++underBudgetTicks >= UNDER_BUDGET_TICKS_TO_RECOVER && previous != TrackingLevel.FULL) {
+                next = TrackingLevel.values()[previous.ordinal() - 1];
+                underBudgetTicks = 0;
+            }
+        }
+
+        Map<String, Object> change = null;
+        if (next != previous) {
+            level = next;
+            log.info("Tracking level changed from {} to {} ({}us spent this tick, budget {}us)", previous, next, tickNanos / 1_000, budgetNanos / 1_000);
+            change = new ConcurrentHashMap<>();
+            change.put("previousLevel", previous.toString());
+            change.put("level", next.toString());
+            change.put("tickNanos", tickNanos);
+            change.put("budgetNanos", budgetNanos);
+            change.put("handlerNanos", new HashMap<>(handlerNanos));
+        }
+
+        tickNanos = 0;
+        handlerNanos.clear();
+        return change;
+    }
+}
@@ -0,0 +1,19 @@
+package nl.doonline.ZSCompetitions;
+
+/**
+ * How much optional tracking work the {@link TickBudgetGovernor} currently allows. Each level
+ * keeps the restrictions of the levels before it.
+ */
+public enum TrackingLevel {
+    FULL,
+    // Position updates are only pushed every few ticks
+    REDUCED_POSITION_RATE,
+    // Vision requests scan a smaller radius around the player
+    REDUCED_VISION_RADIUS,
+    // Convex hulls and clickboxes are no longer projected, bounding boxes come back empty
+    NO_HULLS;
+
+    public boolean atLeast(TrackingLevel other) {
+        return ordinal() >= other.ordinal();
+    }
+}
@@ -13,7 +13,6 @@ import net.runelite.api.Constants;
 import javax.inject.Inject;
 import java.awt.Rectangle;
 import java.awt.Polygon;
-import java.awt.Shape;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -31,15 +30,22 @@ import java.util.stream.Collectors;
 @Singleton
 public class VisionTrackerService {
 
+    // Scan radius used once the governor reduces vision work
+    private static final int REDUCED_RENDER_RADIUS = 2;
+
     private final Client client;
     private final ClientThread clientThread;
     private final EventTrackerConfig config;
+    private final GeometryCacheService geometryCacheService;
+    private final TickBudgetGovernor tickBudgetGovernor;
 
     @Inject
-    public VisionTrackerService(Client client, ClientThread clientThread, EventTrackerConfig config) {
+    public VisionTrackerService(Client client, ClientThread clientThread, EventTrackerConfig config, GeometryCacheService geometryCacheService, TickBudgetGovernor tickBudgetGovernor) {
         this.client = client;
         this.clientThread = clientThread;
         this.config = config;
+        this.geometryCacheService = geometryCacheService;
+        this.tickBudgetGovernor = tickBudgetGovernor;
     }
 
     public void start() {
@@ -56,7 +62,6 @@ public class VisionTrackerService {
         Callable<Map<String, Object>> callable = () -> {
             Map<String, Object> unifiedData = new ConcurrentHashMap<>();
             Map<String, Object> newVisibleTiles = new ConcurrentHashMap<>();
-            List<Map<String, Object>> newVisibleNpcs = new ArrayList<>();
             List<Map<String, Object>> newVisibleObjects = new ArrayList<>();
             List<Map<String, Object>> newVisibleGroundItems = new ArrayList<>();
 
@@ -68,19 +73,14 @@ public class VisionTrackerService {
             Scene scene = wv.getScene();
             int plane = wv.getPlane();
 
-            WorldPoint playerLocation = client.getLocalPlayer() != null ? client.getLocalPlayer().getWorldLocation() : null;
+            WorldPoint playerLocation = geometryCacheService.getWorldLocation(client.getLocalPlayer());
             int renderRadius = config.tileRenderRadius();
+            if (tickBudgetGovernor.getLevel().atLeast(TrackingLevel.REDUCED_VISION_RADIUS)) {
+                renderRadius = Math.min(renderRadius, REDUCED_RENDER_RADIUS);
+            }
 
             // Collect NPCs
-            for (NPC npc : wv.npcs().stream().filter(Objects::nonNull).collect(Collectors.toList())) {
-                Map<String, Object> npcData = new HashMap<>();
-                npcData.put("npcId", npc.getId());
-                npcData.put("npcName", npc.getName());
-                npcData.put("boundingBox", getBoundingBox(npc));
-                npcData.put("worldPosition", Map.of("x", npc.getWorldLocation().getX(), "y", npc.getWorldLocation().getY(), "plane", npc.getWorldLocation().getPlane()));
-                newVisibleNpcs.add(npcData);
-            }
-            unifiedData.put("visibleNpcs", newVisibleNpcs);
+            unifiedData.put("visibleNpcs", getNpcData(wv));
 
             // Collect GameObjects and Tiles (including GroundItems)
             for (int x = 0; x < Constants.SCENE_SIZE; x++) {
@@ -113,7 +113,8 @@ public class VisionTrackerService {
                             List<Map<String, Object>> entitiesOnTile = new ArrayList<>();
                             // Players
                             for (Player player : wv.players().stream().filter(Objects::nonNull).collect(Collectors.toList())) {
-                                if (player.getLocalLocation().distanceTo(tile.getLocalLocation()) == 0) {
+                                LocalPoint playerLocalLocation = geometryCacheService.getLocalLocation(player);
+                                if (playerLocalLocation != null && playerLocalLocation.distanceTo(tile.getLocalLocation()) == 0) {
                                     Map<String, Object> entity = new HashMap<>();
                                     entity.put("type", "PLAYER");
                                     entity.put("id", player.getId());
@@ -180,23 +181,43 @@ public class VisionTrackerService {
         return task.get();
     }
 
+    // Must be called on the client thread
+    public List<Map<String, Object>> getNpcData() {
+        WorldView wv = client.getTopLevelWorldView();
+        return wv != null ? getNpcData(wv) : Collections.emptyList();
+    }
+
+    private List<Map<String, Object>> getNpcData(WorldView wv) {
+        List<Map<String, Object>> npcs = new ArrayList<>();
+        for (NPC npc : wv.npcs().stream().filter(Objects::nonNull).collect(Collectors.toList())) {
+            Map<String, Object> npcData = new HashMap<>();
+            npcData.put("npcId", npc.getId());
+            npcData.put("npcName", npc.getName());
+            npcData.put("boundingBox", getBoundingBox(npc));
+            ActorFootprint footprint = geometryCacheService.getFootprint(npc);
+            if (footprint != null) {
+                npcData.put("worldPosition", Map.of("x", footprint.getX(), "y", footprint.getY(), "plane", footprint.getPlane()));
+                npcData.put("footprint", footprint.toMap());
+            }
+            npcs.add(npcData);
+        }
+        return npcs;
+    }
+
     // Helper to get bounding box for Actors (NPCs, Players)
     private Map<String, Object> getBoundingBox(net.runelite.api.Actor actor) {
-        if (actor == null || actor.getConvexHull() == null) {
-            return null;
-        }
-        Shape shape = actor.getConvexHull();
-        Rectangle bounds = shape.getBounds();
-        return Map.of("x", bounds.x, "y", bounds.y, "width", bounds.width, "height", bounds.height);
+        return getBoundingBoxForBounds(geometryCacheService.getHullBounds(actor));
     }
 
     // Helper to get bounding box for GameObjects
     private Map<String, Object> getBoundingBox(net.runelite.api.GameObject gameObject) {
-        if (gameObject == null || gameObject.getClickbox() == null) {
+        return getBoundingBoxForBounds(geometryCacheService.getClickboxBounds(gameObject));
+    }
+
+    private Map<String, Object> getBoundingBoxForBounds(Rectangle bounds) {
+        if (bounds == null) {
             return null;
         }
-        Shape shape = gameObject.getClickbox();
-        Rectangle bounds = shape.getBounds();
         return Map.of("x", bounds.x, "y", bounds.y, "width", bounds.width, "height", bounds.height);
     }
 }
\ No newline at end of file
@@ -26,10 +26,14 @@ public class ZSCompetitionsPlugin extends Plugin {
     @Inject
     private VisionTrackerService visionTrackerService;
 
+    @Inject
+    private MovementTrailService movementTrailService;
+
     @Override
     protected void startUp() throws Exception {
         log.info("0ZS Competitions plugin started!");
         eventBus.register(eventTrackerService);
+        eventBus.register(movementTrailService);
         eventTrackerService.start();
 
     }
@@ -38,7 +42,9 @@ public class ZSCompetitionsPlugin extends Plugin {
     protected void shutDown() throws Exception {
 
         eventTrackerService.stop();
+        eventBus.unregister(movementTrailService);
         eventBus.unregister(eventTrackerService);
+        movementTrailService.clear();
         log.info("0ZS Competitions plugin stopped!");
     }
 
@@ -0,0 +1,141 @@
+package nl.doonline.ZSCompetitions;
+
+import net.runelite.api.ChatMessageType;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ChatRuleEngineTest {
+
+    private ChatRuleEngine compile(String customRules, String forwardedTypes) {
+        ChatRuleEngine engine = new ChatRuleEngine(new EventTrackerConfig() {
+            @Override
+            public String customChatRules() {
+                return customRules;
+            }
+
+            @Override
+            public String forwardedChatTypes() {
+                return forwardedTypes;
+            }
+        });
+        engine.compile(Set.of("NPC_SPAWNED", "CHAT_MESSAGE"));
+        return engine;
+    }
+
+    private ChatRuleEngine builtIns() {
+        return compile("", "CLAN_CHAT,CLAN_MESSAGE");
+    }
+
+    private static Map<String, Object> assertEvent(ChatRuleEngine.Match match, String eventType) {
+        assertNotNull("Expected a " + eventType + " event", match);
+        assertEquals(eventType, match.getEventType());
+        return match.getData();
+    }
+
+    @Test
+    public void killCounts() {
+        ChatRuleEngine engine = builtIns();
+
+        Map<String, Object> data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "Your Zulrah kill count is: <col=ff0000>1,234</col>."), "KILL_COUNT");
+        assertEquals("Zulrah", data.get("boss"));
+        assertEquals(1234L, data.get("count"));
+
+        data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "Your Gauntlet completion count is: <col=ff0000>12</col>."), "KILL_COUNT");
+        assertEquals("Gauntlet", data.get("boss"));
+        assertEquals(12L, data.get("count"));
+
+        data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "Your completion count for Tombs of Amascut: Expert Mode is: <col=ff0000>5</col>."), "KILL_COUNT");
+        assertEquals("Tombs of Amascut: Expert Mode", data.get("boss"));
+        assertEquals(5L, data.get("count"));
+
+        data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "Your completed Theatre of Blood count is: <col=ff0000>42</col>."), "KILL_COUNT");
+        assertEquals("Theatre of Blood", data.get("boss"));
+
+        data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "Your subdued Wintertodt count is: <col=ff0000>300</col>."), "KILL_COUNT");
+        assertEquals("Wintertodt", data.get("boss"));
+
+        data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "Your herbiboar harvest count is: <col=ff0000>7</col>."), "KILL_COUNT");
+        assertEquals("herbiboar", data.get("boss"));
+    }
+
+    @Test
+    public void agilityLapsAreNotKillCounts() {
+        ChatRuleEngine engine = builtIns();
+        assertNull(engine.match(ChatMessageType.GAMEMESSAGE, "", "Your Ardougne Agility Course lap count is: <col=ff0000>42</col>."));
+        assertNull(engine.match(ChatMessageType.GAMEMESSAGE, "", "Your Seers' Village Agility Course lap count is: <col=ff0000>1,000</col>."));
+    }
+
+    @Test
+    public void valuableDrops() {
+        ChatRuleEngine engine = builtIns();
+
+        Map<String, Object> data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "<col=ef1020>Valuable drop: Abyssal whip (1,500,000 coins)</col>"), "VALUABLE_DROP");
+        assertEquals("Abyssal whip", data.get("item"));
+        assertEquals(1_500_000L, data.get("value"));
+        assertNull(data.get("quantity"));
+
+        data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "<col=ef1020>Valuable drop: 3 x Dragon bones (6,924 coins)</col>"), "VALUABLE_DROP");
+        assertEquals("Dragon bones", data.get("item"));
+        assertEquals(3L, data.get("quantity"));
+        assertEquals(6_924L, data.get("value"));
+    }
+
+    @Test
+    public void petsAndCollectionLog() {
+        ChatRuleEngine engine = builtIns();
+
+        assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "You have a funny feeling like you're being followed."), "PET_DROP");
+        assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "You feel something weird sneaking into your backpack."), "PET_DROP");
+        assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "You have a funny feeling like you would have been followed..."), "PET_DROP");
+
+        Map<String, Object> data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "New item added to your collection log: <col=ef1020>Bryophyta's essence</col>"), "COLLECTION_LOG");
+        assertEquals("Bryophyta's essence", data.get("item"));
+    }
+
+    @Test
+    public void builtInRulesIgnoreOtherPlayersChat() {
+        ChatRuleEngine engine = builtIns();
+        assertNull(engine.match(ChatMessageType.PUBLICCHAT, "Someone", "Your Zulrah kill count is: 9999."));
+    }
+
+    @Test
+    public void unmatchedChatIsOnlyForwardedForConfiguredTypes() {
+        ChatRuleEngine engine = builtIns();
+        assertEvent(engine.match(ChatMessageType.CLAN_CHAT, "Clanmate", "gl on the drop"), "CHAT_MESSAGE");
+        assertNull(engine.match(ChatMessageType.PUBLICCHAT, "Someone", "buying gf"));
+        assertNull(engine.match(ChatMessageType.GAMEMESSAGE, "", "Oh dear, you are dead!"));
+    }
+
+    @Test
+    public void customRulesDefaultToGameMessages() {
+        ChatRuleEngine engine = compile("CLUE_COMPLETED=You have completed (?<count>\\d+) (?<tier>\\w+) Treasure Trails", "");
+
+        Map<String, Object> data = assertEvent(engine.match(ChatMessageType.GAMEMESSAGE, "", "You have completed 25 hard Treasure Trails."), "CLUE_COMPLETED");
+        assertEquals("hard", data.get("tier"));
+        assertEquals("25", data.get("count"));
+        assertNull(engine.match(ChatMessageType.PUBLICCHAT, "Someone", "You have completed 25 hard Treasure Trails."));
+    }
+
+    @Test
+    public void customRulesCanListTheirChatTypes() {
+        ChatRuleEngine engine = compile("CLAN_DROP[CLAN_MESSAGE]=(?<player>.+) received a drop: (?<item>.+)", "");
+
+        Map<String, Object> data = assertEvent(engine.match(ChatMessageType.CLAN_MESSAGE, "", "Clanmate received a drop: Twisted bow"), "CLAN_DROP");
+        assertEquals("Clanmate", data.get("player"));
+        assertNull(engine.match(ChatMessageType.GAMEMESSAGE, "", "Clanmate received a drop: Twisted bow"));
+    }
+
+    @Test
+    public void customRulesCannotTakeOverPluginEventTypes() {
+        ChatRuleEngine engine = compile("NPC_SPAWNED=spawned\nKILL_COUNT=.*\nCHAT_MESSAGE=.*", "");
+
+        assertNull(engine.match(ChatMessageType.GAMEMESSAGE, "", "spawned"));
+        assertEquals(4, engine.getSchemas().size());
+    }
+}
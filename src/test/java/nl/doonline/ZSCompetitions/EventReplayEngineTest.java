@@ -0,0 +1,436 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.gson.Gson;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventReplayEngineTest {
+
+    private static final long TIMEOUT_MILLIS = 5_000;
+    private static final int DISCONNECTED = -1;
+
+    private final Gson gson = new Gson();
+    private final HeldWebhook webhook = new HeldWebhook();
+    private final AtomicInteger connectionLosses = new AtomicInteger();
+    private final AtomicInteger rejections = new AtomicInteger();
+    private final AtomicInteger recoveries = new AtomicInteger();
+
+    private ScheduledExecutorService scheduler;
+    private int maxInFlight = 1;
+    private int batchSize = 1;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        webhook.releaseAll();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void outOfOrderAcksOnlyMoveTheCheckpointOverAcknowledgedEvents() throws Exception {
+        maxInFlight = 3;
+        EventReplayEngine engine = startEngine();
+        enqueueEvents(engine, 3);
+        engine.resume();
+
+        List<HeldPost> posts = webhook.nextPosts(3);
+        HeldPost first = posts.get(0);
+        HeldPost second = posts.get(1);
+        HeldPost third = posts.get(2);
+        assertEquals(List.of(1L), first.sequences());
+        assertEquals(List.of(2L), second.sequences());
+        assertEquals(List.of(3L), third.sequences());
+
+        third.respond(200);
+        awaitCondition(() -> engine.getBacklogSize() == 2);
+        assertEquals(0, engine.getCheckpoint());
+
+        first.respond(200);
+        awaitCondition(() -> engine.getCheckpoint() == 1);
+        assertEquals(1, engine.getBacklogSize());
+
+        second.respond(200);
+        awaitCondition(() -> engine.getCheckpoint() == 3);
+        assertEquals(0, engine.getBacklogSize());
+    }
+
+    @Test
+    public void resumeAfterAFailureReplaysOnlyUnacknowledgedEvents() throws Exception {
+        EventReplayEngine engine = startEngine();
+        enqueueEvents(engine, 3);
+        engine.resume();
+
+        webhook.nextPost().respond(200);
+        HeldPost failed = webhook.nextPost();
+        assertEquals(List.of(2L), failed.sequences());
+        failed.disconnect();
+        awaitCondition(() -> connectionLosses.get() == 1);
+        assertNull(webhook.pollPost(200));
+        assertEquals(1, engine.getCheckpoint());
+        assertTrue(engine.isFailing());
+
+        engine.resume();
+        HeldPost replayed = webhook.nextPost();
+        assertEquals(List.of(2L), replayed.sequences());
+        assertEquals(failed.eventIds(), replayed.eventIds());
+        replayed.respond(200);
+        awaitCondition(() -> recoveries.get() == 1);
+        assertFalse(engine.isFailing());
+        HeldPost last = webhook.nextPost();
+        assertEquals(List.of(3L), last.sequences());
+        last.respond(200);
+
+        awaitCondition(() -> engine.getCheckpoint() == 3);
+        assertEquals(0, engine.getBacklogSize());
+    }
+
+    @Test
+    public void checkpointStopsAtTheFirstUnacknowledgedBatch() throws Exception {
+        maxInFlight = 2;
+        batchSize = 2;
+        EventReplayEngine engine = startEngine();
+        enqueueEvents(engine, 5);
+        engine.resume();
+
+        List<HeldPost> posts = webhook.nextPosts(2);
+        HeldPost first = posts.get(0);
+        HeldPost second = posts.get(1);
+        assertEquals(List.of(1L, 2L), first.sequences());
+        assertEquals(List.of(3L, 4L), second.sequences());
+
+        first.respond(200);
+        HeldPost third = webhook.nextPost();
+        assertEquals(List.of(5L), third.sequences());
+        awaitCondition(() -> engine.getCheckpoint() == 2);
+
+        third.respond(409);
+        awaitCondition(() -> engine.getBacklogSize() == 2);
+        assertEquals(2, engine.getCheckpoint());
+
+        second.respond(200);
+        awaitCondition(() -> engine.getCheckpoint() == 5);
+        assertEquals(0, engine.getBacklogSize());
+    }
+
+    @Test
+    public void rejectedEventsAreKeptAndDeliveryPauses() throws Exception {
+        EventReplayEngine engine = startEngine();
+        enqueueEvents(engine, 2);
+        engine.resume();
+
+        webhook.nextPost().respond(404);
+        awaitCondition(() -> rejections.get() == 1);
+        assertEquals(2, engine.getBacklogSize());
+        assertEquals(0, engine.getCheckpoint());
+
+        // An error status waits out retryDelaySeconds, even when resumed from outside
+        engine.resume();
+        assertNull(webhook.pollPost(500));
+        assertEquals(List.of(1L), webhook.nextPost().sequences());
+        assertEquals(0, connectionLosses.get());
+        assertEquals(0, recoveries.get());
+    }
+
+    @Test
+    public void tooManyRequestsIsNotPostedAgainBeforeRetryAfter() throws Exception {
+        EventReplayEngine engine = startEngine();
+        enqueueEvents(engine, 1);
+        engine.resume();
+
+        webhook.nextPost().respond(429, "2");
+        long rejectedAt = System.nanoTime();
+        awaitCondition(() -> rejections.get() == 1);
+        engine.resume();
+
+        HeldPost retried = webhook.nextPost();
+        assertTrue(millisSince(rejectedAt) >= 2_000);
+        assertEquals(List.of(1L), retried.sequences());
+        retried.respond(200);
+        awaitCondition(() -> engine.getCheckpoint() == 1);
+        assertEquals(1, recoveries.get());
+    }
+
+    @Test
+    public void repeatedRejectionsBackOffExponentially() throws Exception {
+        EventReplayEngine engine = startEngine();
+        enqueueEvents(engine, 1);
+        engine.resume();
+
+        webhook.nextPost().respond(503);
+        long firstRejectedAt = System.nanoTime();
+        HeldPost firstRetry = webhook.nextPost();
+        assertTrue(millisSince(firstRejectedAt) >= 1_000);
+
+        firstRetry.respond(503);
+        long secondRejectedAt = System.nanoTime();
+        HeldPost secondRetry = webhook.nextPost();
+        assertTrue(millisSince(secondRejectedAt) >= 2_000);
+
+        secondRetry.respond(200);
+        awaitCondition(() -> engine.getCheckpoint() == 1);
+        assertEquals(2, rejections.get());
+    }
+
+    @Test
+    public void batchRefusedAsTooLargeIsSplit() throws Exception {
+        batchSize = 4;
+        EventReplayEngine engine = startEngine();
+        enqueueEvents(engine, 4);
+        engine.resume();
+
+        webhook.nextPost().respond(413);
+        List<HeldPost> halves = webhook.nextPosts(2);
+        HeldPost left = halves.get(0);
+        HeldPost right = halves.get(1);
+        assertEquals(List.of(1L, 2L), left.sequences());
+        assertEquals(List.of(3L, 4L), right.sequences());
+
+        left.respond(200);
+        right.respond(200);
+        awaitCondition(() -> engine.getCheckpoint() == 4);
+        assertEquals(0, rejections.get());
+        assertFalse(webhook.hasPendingPosts());
+    }
+
+    @Test
+    public void drainPostsTheBacklogOnTheCallingThread() throws Exception {
+        batchSize = 2;
+        EventReplayEngine engine = startEngine();
+        enqueueEvents(engine, 3);
+        engine.stop();
+
+        CompletableFuture<Void> drain = CompletableFuture.runAsync(() -> engine.drain(TIMEOUT_MILLIS));
+        HeldPost first = webhook.nextPost();
+        assertEquals(List.of(1L, 2L), first.sequences());
+        first.respond(200);
+        HeldPost second = webhook.nextPost();
+        assertEquals(List.of(3L), second.sequences());
+        second.respond(200);
+        drain.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(3, engine.getCheckpoint());
+        assertEquals(0, engine.getBacklogSize());
+    }
+
+    private EventReplayEngine startEngine() {
+        OkHttpClient okHttpClient = new OkHttpClient.Builder().addInterceptor(webhook).build();
+        EventTrackerConfig config = new EventTrackerConfig() {
+            @Override
+            public String postEndpoint() {
+                return "http://127.0.0.1:1/webhook";
+            }
+
+            @Override
+            public int replayMaxInFlight() {
+                return maxInFlight;
+            }
+
+            @Override
+            public int replayRatePerSecond() {
+                return 5000;
+            }
+
+            @Override
+            public int replayBatchSize() {
+                return batchSize;
+            }
+
+            @Override
+            public int retryDelaySeconds() {
+                return 1;
+            }
+        };
+        EventReplayEngine engine = new EventReplayEngine(okHttpClient, gson, config);
+        engine.start(scheduler, new EventReplayEngine.DeliveryListener() {
+            @Override
+            public void onConnectionLost() {
+                connectionLosses.incrementAndGet();
+            }
+
+            @Override
+            public void onDeliveryRejected(int code) {
+                rejections.incrementAndGet();
+            }
+
+            @Override
+            public void onDeliveryRecovered() {
+                recoveries.incrementAndGet();
+            }
+        });
+        return engine;
+    }
+
+    private static void enqueueEvents(EventReplayEngine engine, int count) {
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> event = new ConcurrentHashMap<>();
+            event.put("eventType", "TEST");
+            event.put("eventData", Map.of("index", i));
+            engine.enqueue(event);
+        }
+    }
+
+    private static long millisSince(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nanos);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within " + TIMEOUT_MILLIS + "ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Stands in for the webhook inside OkHttp. Every post is held until the test answers it, so
+     * acknowledgements can arrive in any order.
+     */
+    private final class HeldWebhook implements Interceptor {
+
+        private final BlockingQueue<HeldPost> posts = new LinkedBlockingQueue<>();
+        private final List<HeldPost> held = new ArrayList<>();
+
+        @Override
+        public Response intercept(Chain chain) throws java.io.IOException {
+            Buffer buffer = new Buffer();
+            chain.request().body().writeTo(buffer);
+            HeldPost post = new HeldPost(buffer.readUtf8());
+            synchronized (held) {
+                held.add(post);
+            }
+            posts.add(post);
+            int code;
+            try {
+                code = post.response.get(TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                code = 503;
+            }
+            if (code == DISCONNECTED) {
+                throw new java.io.IOException("Connection reset");
+            }
+            Response.Builder response = new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message("")
+                    .body(ResponseBody.create("", null));
+            if (post.retryAfter != null) {
+                response.header("Retry-After", post.retryAfter);
+            }
+            return response.build();
+        }
+
+        HeldPost nextPost() throws InterruptedException {
+            HeldPost post = pollPost(TIMEOUT_MILLIS);
+            if (post == null) {
+                fail("No post within " + TIMEOUT_MILLIS + "ms");
+            }
+            return post;
+        }
+
+        // Concurrent posts reach the interceptor in any order, so they're returned by sequence
+        List<HeldPost> nextPosts(int count) throws InterruptedException {
+            List<HeldPost> batch = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                batch.add(nextPost());
+            }
+            batch.sort(Comparator.comparing(post -> post.sequences().get(0)));
+            return batch;
+        }
+
+        HeldPost pollPost(long timeoutMillis) throws InterruptedException {
+            return posts.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        boolean hasPendingPosts() {
+            return !posts.isEmpty();
+        }
+
+        void releaseAll() {
+            synchronized (held) {
+                held.forEach(post -> post.response.complete(503));
+            }
+        }
+    }
+
+    private final class HeldPost {
+
+        private final List<Map<?, ?>> events = new ArrayList<>();
+        private final CompletableFuture<Integer> response = new CompletableFuture<>();
+        private volatile String retryAfter;
+
+        private HeldPost(String body) {
+            Object payload = gson.fromJson(body, Object.class);
+            if (payload instanceof List) {
+                for (Object event : (List<?>) payload) {
+                    events.add((Map<?, ?>) event);
+                }
+            } else {
+                events.add((Map<?, ?>) payload);
+            }
+        }
+
+        void respond(int code) {
+            assertTrue("Post answered twice", response.complete(code));
+        }
+
+        void respond(int code, String retryAfter) {
+            this.retryAfter = retryAfter;
+            respond(code);
+        }
+
+        // Fails the post as if the webhook dropped the connection
+        void disconnect() {
+            respond(DISCONNECTED);
+        }
+
+        List<Long> sequences() {
+            List<Long> sequences = new ArrayList<>();
+            for (Map<?, ?> event : events) {
+                sequences.add(((Number) event.get("sequence")).longValue());
+            }
+            return sequences;
+        }
+
+        List<Object> eventIds() {
+            List<Object> eventIds = new ArrayList<>();
+            for (Map<?, ?> event : events) {
+                eventIds.add(event.get("eventId"));
+            }
+            return eventIds;
+        }
+    }
+}
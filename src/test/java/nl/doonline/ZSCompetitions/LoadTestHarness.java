@@ -0,0 +1,316 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import net.runelite.api.Client;
+import net.runelite.client.callback.ClientThread;
+import okhttp3.OkHttpClient;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives {@link EventTrackerService} with a synthetic or recorded event stream against a
+ * {@link StandInWebhookReceiver}, and reports how the delivery path held up.
+ * <p>
+ * Run with {@code ./gradlew loadTest}. Options are passed as {@code -PloadTest.<option>=<value>}:
+ * <ul>
+ *     <li>{@code rate}: events per second to drive (default 500)</li>
+ *     <li>{@code durationSeconds}: how long to drive events (default 30)</li>
+ *     <li>{@code drainSeconds}: how long to wait for the backlog to drain afterwards (default 60)</li>
+ *     <li>{@code latencyMillis}: receiver response latency (default 20)</li>
+ *     <li>{@code errorRate}: fraction of posts the receiver answers with a 503 (default 0.01)</li>
+ *     <li>{@code outageEverySeconds}: take the receiver down this often, 0 for never (default 10)</li>
+ *     <li>{@code outageSeconds}: how long each outage lasts (default 3)</li>
+ *     <li>{@code recording}: a JSON array of events, e.g. saved from /api/client/session, to replay instead of synthetic events</li>
+ *     <li>{@code receiverPort} and {@code pollPort}: local ports for the receiver and the plugin's own server</li>
+ *     <li>{@code maxInFlight}, {@code ratePerSecond}, {@code batchSize}: the plugin's replay settings</li>
+ * </ul>
+ */
+public class LoadTestHarness {
+
+    private static final String PREFIX = "loadTest.";
+
+    public static void main(String[] args) throws Exception {
+        final int rate = Integer.parseInt(option("rate", "500"));
+        final int durationSeconds = Integer.parseInt(option("durationSeconds", "30"));
+        final int drainSeconds = Integer.parseInt(option("drainSeconds", "60"));
+        final long latencyMillis = Long.parseLong(option("latencyMillis", "20"));
+        final double errorRate = Double.parseDouble(option("errorRate", "0.01"));
+        final int outageEverySeconds = Integer.parseInt(option("outageEverySeconds", "10"));
+        final int outageSeconds = Integer.parseInt(option("outageSeconds", "3"));
+        final int receiverPort = Integer.parseInt(option("receiverPort", "18464"));
+        final int pollPort = Integer.parseInt(option("pollPort", "18465"));
+        final int maxInFlight = Integer.parseInt(option("maxInFlight", "4"));
+        final int ratePerSecond = Integer.parseInt(option("ratePerSecond", "5000"));
+        final int batchSize = Integer.parseInt(option("batchSize", "1"));
+        final String recording = option("recording", null);
+
+        List<Map<String, Object>> recordedEvents = recording != null ? loadRecording(recording) : null;
+
+        StandInWebhookReceiver receiver = new StandInWebhookReceiver(receiverPort, latencyMillis, errorRate);
+        receiver.start();
+
+        EventTrackerConfig config = new EventTrackerConfig() {
+            @Override
+            public String postEndpoint() {
+                return "http://127.0.0.1:" + receiverPort + "/webhook";
+            }
+
+            @Override
+            public int pollPort() {
+                return pollPort;
+            }
+
+            @Override
+            public int retryDelaySeconds() {
+                return 1;
+            }
+
+            @Override
+            public int popupDelayMinutes() {
+                // Never give up on the receiver during a run
+                return 24 * 60;
+            }
+
+            @Override
+            public int replayMaxInFlight() {
+                return maxInFlight;
+            }
+
+            @Override
+            public int replayRatePerSecond() {
+                return ratePerSecond;
+            }
+
+            @Override
+            public int replayBatchSize() {
+                return batchSize;
+            }
+        };
+
+        // Nothing the delivery path touches needs a live client
+        AtomicInteger tickCount = new AtomicInteger();
+        Client client = (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class}, (proxy, method, methodArgs) -> {
+            switch (method.getName()) {
+                case "isClientThread":
+                    return true;
+                case "getTickCount":
+                case "getGameCycle":
+                    return tickCount.get();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == methodArgs[0];
+                case "toString":
+                    return "LoadTestClient";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        ClientThread clientThread = new ClientThread() {
+            @Override
+            public void invoke(Runnable runnable) {
+                // The harness' driver thread stands in for the client thread
+                runnable.run();
+            }
+        };
+
+        Gson gson = new Gson();
+        OkHttpClient okHttpClient = new OkHttpClient();
+        TickBudgetGovernor tickBudgetGovernor = new TickBudgetGovernor(config);
+        GeometryCacheService geometryCacheService = new GeometryCacheService(client, tickBudgetGovernor);
+        VisionTrackerService visionTrackerService = new VisionTrackerService(client, clientThread, config, geometryCacheService, tickBudgetGovernor);
+        MovementTrailService movementTrailService = new MovementTrailService(client, config, geometryCacheService, tickBudgetGovernor);
+        EventReplayEngine replayEngine = new EventReplayEngine(okHttpClient, gson, config);
+        EventTrackerService eventTrackerService = new EventTrackerService(client, clientThread, config, gson, okHttpClient,
+                null, visionTrackerService, geometryCacheService, movementTrailService, replayEngine, tickBudgetGovernor, new ChatRuleEngine(config));
+
+        ScheduledExecutorService harnessScheduler = Executors.newScheduledThreadPool(2);
+        AtomicInteger backlogHighWaterMark = new AtomicInteger();
+        harnessScheduler.scheduleAtFixedRate(() -> backlogHighWaterMark.accumulateAndGet(replayEngine.getBacklogSize(), Math::max),
+                0, 10, TimeUnit.MILLISECONDS);
+        if (outageEverySeconds > 0) {
+            harnessScheduler.scheduleAtFixedRate(() -> {
+                receiver.goDown();
+                harnessScheduler.schedule(() -> {
+                    try {
+                        receiver.start();
+                    } catch (Exception e) {
+                        System.err.println("Failed to bring the receiver back up: " + e.getMessage());
+                    }
+                }, outageSeconds, TimeUnit.SECONDS);
+            }, outageEverySeconds, outageEverySeconds, TimeUnit.SECONDS);
+        }
+
+        eventTrackerService.start();
+
+        System.out.printf("Driving %d events/s for %ds (%s)...%n", rate, durationSeconds,
+                recordedEvents != null ? "recording " + recording : "synthetic");
+        long startNanos = System.nanoTime();
+        long intervalNanos = 1_000_000_000L / Math.max(1, rate);
+        long total = (long) rate * durationSeconds;
+        for (long sequence = 0; sequence < total; sequence++) {
+            long due = startNanos + sequence * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            // A game tick every 600ms of driven time
+            tickCount.set((int) ((System.nanoTime() - startNanos) / 600_000_000L));
+
+            Map<String, Object> event = recordedEvents != null
+                    ? recordedEvents.get((int) (sequence % recordedEvents.size()))
+                    : syntheticEvent(sequence);
+            Map<String, Object> eventData = new ConcurrentHashMap<>();
+            Object recordedData = event.get("eventData");
+            if (recordedData instanceof Map) {
+                ((Map<?, ?>) recordedData).forEach((key, value) -> {
+                    if (key != null && value != null) {
+                        eventData.put(key.toString(), value);
+                    }
+                });
+            }
+            eventData.put("loadTestSequence", sequence);
+            eventTrackerService.sendEvent(String.valueOf(event.get("eventType")), eventData);
+        }
+        long driveNanos = System.nanoTime() - startNanos;
+
+        // Let the last outage end, then give the backlog time to drain
+        harnessScheduler.shutdown();
+        harnessScheduler.awaitTermination(outageSeconds + 1, TimeUnit.SECONDS);
+        receiver.start();
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainSeconds);
+        while (receiver.getReceivedLoadTestSequences().size() < total && System.nanoTime() < drainDeadline) {
+            backlogHighWaterMark.accumulateAndGet(replayEngine.getBacklogSize(), Math::max);
+            Thread.sleep(50);
+        }
+        long endToEndNanos = System.nanoTime() - startNanos;
+
+        long delivered = receiver.getReceivedLoadTestSequences().size();
+        List<Long> latencies = receiver.getLatenciesMicros();
+        Collections.sort(latencies);
+
+        System.out.println();
+        System.out.println("=== Load test report ===");
+        System.out.printf("Events driven:          %d in %.1fs (%.0f events/s)%n", total, driveNanos / 1e9, total / (driveNanos / 1e9));
+        System.out.printf("Events delivered:       %d%n", delivered);
+        System.out.printf("Events lost:            %d%n", total - delivered);
+        System.out.printf("End-to-end throughput:  %.0f events/s over %.1fs%n", delivered / (endToEndNanos / 1e9), endToEndNanos / 1e9);
+        System.out.printf("Delivery latency:       p50 %s, p95 %s, p99 %s, max %s%n",
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99), percentile(latencies, 100));
+        System.out.printf("Backlog high-water:     %d events%n", backlogHighWaterMark.get());
+        System.out.printf("Backlog at end:         %d events (checkpoint %d)%n", replayEngine.getBacklogSize(), replayEngine.getCheckpoint());
+        System.out.printf("Receiver:               %d posts, %d answered 503, %d duplicate events dropped, %d outages%n",
+                receiver.getPosts(), receiver.getRejectedPosts(), receiver.getDuplicates(), receiver.getOutages());
+
+        eventTrackerService.stop();
+        receiver.shutdown();
+        // OkHttp's dispatcher threads would otherwise keep the JVM alive for another minute
+        System.exit(total == delivered ? 0 : 1);
+    }
+
+    private static String option(String name, String defaultValue) {
+        return System.getProperty(PREFIX + name, defaultValue);
+    }
+
+    private static List<Map<String, Object>> loadRecording(String path) throws Exception {
+        String json = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        List<Map<String, Object>> events = new Gson().fromJson(json, new TypeToken<List<Map<String, Object>>>() {
+        }.getType());
+        if (events == null || events.isEmpty()) {
+            throw new IllegalArgumentException("Recording " + path + " contains no events");
+        }
+        return events;
+    }
+
+    // A rough raid mix: mostly positions and hitsplats, some xp drops and chat
+    private static Map<String, Object> syntheticEvent(long sequence) {
+        Map<String, Object> event = new ConcurrentHashMap<>();
+        Map<String, Object> data = new ConcurrentHashMap<>();
+        switch ((int) (sequence % 10)) {
+            case 0:
+            case 1:
+            case 2:
+            case 3:
+                event.put("eventType", "ACTOR_POSITION_UPDATE");
+                data.put("actorName", "Akkha");
+                data.put("actorId", 11789);
+                data.put("boundingBox", Map.of("x", 412, "y", 233, "width", 96, "height", 140));
+                break;
+            case 4:
+            case 5:
+            case 6:
+                event.put("eventType", "HITSPLAT_APPLIED");
+                data.put("actorName", "Akkha");
+                data.put("hitsplatType", 16);
+                data.put("amount", (int) (sequence % 40));
+                data.put("boundingBox", Map.of("x", 412, "y", 233, "width", 96, "height", 140));
+                break;
+            case 7:
+            case 8:
+                event.put("eventType", "STAT_CHANGED");
+                data.put("skill", "Ranged");
+                data.put("xp", 13_034_431 + sequence);
+                data.put("level", 99);
+                data.put("boostedLevel", 112);
+                break;
+            default:
+                event.put("eventType", "CHAT_MESSAGE");
+                data.put("type", "GAMEMESSAGE");
+                data.put("name", "");
+                data.put("message", "Your Tombs of Amascut: Expert Mode completion count is: " + sequence + ".");
+                break;
+        }
+        event.put("eventData", data);
+        return event;
+    }
+
+    private static String percentile(List<Long> sortedMicros, int percentile) {
+        if (sortedMicros.isEmpty()) {
+            return "n/a";
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedMicros.size()) - 1;
+        long micros = sortedMicros.get(Math.max(0, Math.min(index, sortedMicros.size() - 1)));
+        return String.format("%.1fms", micros / 1000.0);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return type == void.class ? null : 0;
+    }
+}
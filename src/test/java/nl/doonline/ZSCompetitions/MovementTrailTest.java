@@ -0,0 +1,92 @@
+package nl.doonline.ZSCompetitions;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class MovementTrailTest {
+
+    @SuppressWarnings("unchecked")
+    private static List<Integer> ticks(MovementTrail trail, int fromTick) {
+        List<Integer> ticks = new ArrayList<>();
+        for (int[] point : (List<int[]>) trail.toMap("npc-1", fromTick).get("points")) {
+            ticks.add(point[0]);
+        }
+        return ticks;
+    }
+
+    private static MovementTrail walk(int capacity, int... ticks) {
+        MovementTrail trail = new MovementTrail(capacity);
+        trail.reset("Goblin", 3029);
+        for (int tick : ticks) {
+            // Moves one tile east per sample
+            trail.record(tick, 3200 + tick, 3200, 0);
+        }
+        return trail;
+    }
+
+    @Test
+    public void unchangedPositionsAreNotRecorded() {
+        MovementTrail trail = new MovementTrail(8);
+        trail.reset("Goblin", 3029);
+        trail.record(1, 3200, 3200, 0);
+        trail.record(2, 3200, 3200, 0);
+        trail.record(3, 3201, 3200, 0);
+        trail.record(4, 3201, 3200, 1);
+
+        assertEquals(List.of(1, 3, 4), ticks(trail, 0));
+    }
+
+    @Test
+    public void oldestSamplesAreOverwrittenPastCapacity() {
+        MovementTrail trail = walk(4, 1, 2, 3, 4, 5, 6);
+
+        assertEquals(List.of(3, 4, 5, 6), ticks(trail, 0));
+        @SuppressWarnings("unchecked")
+        List<int[]> points = (List<int[]>) trail.toMap("npc-1", 0).get("points");
+        assertEquals(3203, points.get(0)[1]);
+        assertEquals(3206, points.get(3)[1]);
+    }
+
+    @Test
+    public void fromTickStartsAtThePositionHeldOnThatTick() {
+        MovementTrail trail = walk(8, 10, 20, 30);
+
+        // Before the stored samples, everything is returned
+        assertEquals(List.of(10, 20, 30), ticks(trail, 5));
+        // On a sample
+        assertEquals(List.of(20, 30), ticks(trail, 20));
+        // Between samples the actor stood where the tick 20 sample put it, so the trail starts there
+        assertEquals(List.of(20, 30), ticks(trail, 25));
+        // After the last sample only the current position is left
+        assertEquals(List.of(30), ticks(trail, 100));
+    }
+
+    @Test
+    public void fromTickWorksAcrossTheWrapAround() {
+        MovementTrail trail = walk(3, 10, 20, 30, 40, 50);
+
+        assertEquals(List.of(30, 40, 50), ticks(trail, 0));
+        assertEquals(List.of(40, 50), ticks(trail, 45));
+    }
+
+    @Test
+    public void resetClearsARecycledTrail() {
+        MovementTrail trail = walk(4, 1, 2, 3, 4, 5);
+        trail.reset("Imp", 5007);
+        trail.record(7, 3100, 3100, 0);
+
+        Map<String, Object> map = trail.toMap("npc-2", 0);
+        assertEquals("Imp", map.get("actorName"));
+        assertEquals(5007, map.get("actorId"));
+        assertEquals(List.of(7), ticks(trail, 0));
+        // The recycled trail's last position doesn't suppress the first sample at the same tile
+        trail.reset("Imp", 5007);
+        trail.record(8, 3100, 3100, 0);
+        assertEquals(List.of(8), ticks(trail, 0));
+    }
+}
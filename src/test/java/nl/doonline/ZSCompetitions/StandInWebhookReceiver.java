@@ -0,0 +1,167 @@
+package nl.doonline.ZSCompetitions;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the competition webhook, used by {@link LoadTestHarness}. It answers with a
+ * configurable latency and error rate, can be taken down to simulate an outage, and deduplicates
+ * what it receives by eventId like the real receiver has to.
+ */
+public class StandInWebhookReceiver {
+
+    private final int port;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final Gson gson = new Gson();
+    private final Random random = new Random();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    private final Set<String> receivedEventIds = ConcurrentHashMap.newKeySet();
+    private final Set<Long> receivedLoadTestSequences = ConcurrentHashMap.newKeySet();
+    private final List<Long> latenciesMicros = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong posts = new AtomicLong();
+    private final AtomicLong rejectedPosts = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong outages = new AtomicLong();
+
+    private volatile HttpServer server;
+
+    public StandInWebhookReceiver(int port, long latencyMillis, double errorRate) {
+        this.port = port;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/", this::handle);
+        httpServer.start();
+        server = httpServer;
+    }
+
+    // Stops listening, so posts fail with a refused connection until start() is called again
+    public synchronized void goDown() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+            outages.incrementAndGet();
+        }
+    }
+
+    public void shutdown() {
+        goDown();
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public Set<String> getReceivedEventIds() {
+        return receivedEventIds;
+    }
+
+    // The loadTestSequence tags the harness put on the events it drove
+    public Set<Long> getReceivedLoadTestSequences() {
+        return receivedLoadTestSequences;
+    }
+
+    public List<Long> getLatenciesMicros() {
+        synchronized (latenciesMicros) {
+            return new ArrayList<>(latenciesMicros);
+        }
+    }
+
+    public long getPosts() {
+        return posts.get();
+    }
+
+    public long getRejectedPosts() {
+        return rejectedPosts.get();
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public long getOutages() {
+        return outages.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            posts.incrementAndGet();
+            if (random.nextDouble() < errorRate) {
+                rejectedPosts.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            Instant receivedAt = Instant.now();
+            Object payload = gson.fromJson(body, Object.class);
+            if (payload instanceof List) {
+                for (Object event : (List<?>) payload) {
+                    receive((Map<?, ?>) event, receivedAt);
+                }
+            } else if (payload instanceof Map) {
+                receive((Map<?, ?>) payload, receivedAt);
+            }
+            exchange.sendResponseHeaders(200, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void receive(Map<?, ?> event, Instant receivedAt) {
+        Object eventId = event.get("eventId");
+        if (eventId == null || !receivedEventIds.add(eventId.toString())) {
+            duplicates.incrementAndGet();
+            return;
+        }
+        Object eventData = event.get("eventData");
+        if (eventData instanceof Map && ((Map<?, ?>) eventData).get("loadTestSequence") instanceof Number) {
+            receivedLoadTestSequences.add(((Number) ((Map<?, ?>) eventData).get("loadTestSequence")).longValue());
+        }
+        Object timestamp = event.get("timestamp");
+        if (timestamp != null) {
+            latenciesMicros.add(Duration.between(Instant.parse(timestamp.toString()), receivedAt).toNanos() / 1_000);
+        }
+    }
+}